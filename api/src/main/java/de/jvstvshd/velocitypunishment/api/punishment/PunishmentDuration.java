@@ -45,8 +45,9 @@ import java.util.concurrent.TimeUnit;
 public class PunishmentDuration implements Comparable<PunishmentDuration> {
     private final Duration duration;
     private final boolean permanent;
-    private boolean relative = true;
-    private LocalDateTime fixedExpiration = null;
+    private volatile boolean relative = true;
+    private volatile LocalDateTime fixedExpiration = null;
+    private volatile long fixedExpirationMillis;
 
     private PunishmentDuration(Duration duration, boolean permanent) {
         this.duration = duration;
@@ -58,7 +59,11 @@ public class PunishmentDuration implements Comparable<PunishmentDuration> {
      */
     public void absolute() {
         synchronized (this) {
+            if (!relative) {
+                return;
+            }
             fixedExpiration = expiration();
+            fixedExpirationMillis = Timestamp.valueOf(fixedExpiration).getTime();
             relative = false;
         }
     }
@@ -127,6 +132,17 @@ public class PunishmentDuration implements Comparable<PunishmentDuration> {
         return Timestamp.valueOf(expiration());
     }
 
+    /**
+     * @return the {@link #timestampExpiration()} in milliseconds since the epoch
+     */
+    public long expirationMillis() {
+        if (permanent)
+            return MAX.getTime();
+        if (relative)
+            return System.currentTimeMillis() + duration.toMillis();
+        return fixedExpirationMillis;
+    }
+
     public static Timestamp MAX = Timestamp.valueOf(LocalDateTime.of(9999, 12, 31, 23, 59, 59));
 
     @Override
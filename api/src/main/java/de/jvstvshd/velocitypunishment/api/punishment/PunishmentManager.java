@@ -28,8 +28,12 @@ import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import de.jvstvshd.velocitypunishment.api.punishment.util.PlayerResolver;
 import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -99,6 +103,59 @@ public interface PunishmentManager {
      */
     <T extends Punishment> CompletableFuture<List<T>> getPunishments(UUID player, Executor service, PunishmentType... type);
 
+    /**
+     * Queries the punishments of multiple players at once. By default, this method calls {@link #getPunishments(UUID, Executor, PunishmentType...)}
+     * for every player, implementations should override it to resolve all players with as few queries as possible.
+     *
+     * @param players the players whose punishments should be queried
+     * @param service an {@link Executor} which will be used to perform async operations
+     * @param type    the types of punishments that should be queried, or none to query all types
+     * @param <T>     the type of punishment(s), matching them in <code>type</code>
+     * @return a map containing the punishments of every given player. Players without punishments are mapped to an empty list.
+     */
+    default <T extends Punishment> CompletableFuture<Map<UUID, List<T>>> getPunishments(Collection<UUID> players, Executor service, PunishmentType... type) {
+        Map<UUID, CompletableFuture<List<T>>> futures = new HashMap<>();
+        for (UUID player : players) {
+            futures.put(player, getPunishments(player, service, type));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(unused -> {
+            Map<UUID, List<T>> punishments = new HashMap<>();
+            futures.forEach((player, future) -> punishments.put(player, future.join()));
+            return punishments;
+        });
+    }
+
+    /**
+     * Queries one page of the punishment history of a player. In contrast to {@link #getPunishments(UUID, Executor, PunishmentType...)},
+     * only the punishments of the requested page are loaded into memory. By default, this method queries all punishments and
+     * returns the requested slice, implementations should override it to load only the requested page.
+     *
+     * @param player   the player whose punishments should be queried
+     * @param cursor   the {@link PunishmentPage#nextCursor() cursor} of the previous page, or null to query the first page
+     * @param pageSize the maximum amount of punishments on this page
+     * @param service  an {@link Executor} which will be used to perform async operations
+     * @param type     the types of punishments that should be queried, or none to query all types
+     * @param <T>      the type of punishment(s), matching them in <code>type</code>
+     * @return the requested page
+     */
+    default <T extends Punishment> CompletableFuture<PunishmentPage<T>> getPunishmentHistory(UUID player, @Nullable String cursor, int pageSize,
+                                                                                          Executor service, PunishmentType... type) {
+        if (pageSize <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("page size must be positive: " + pageSize));
+        }
+        final int offset;
+        try {
+            offset = cursor == null ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("invalid cursor: " + cursor, e));
+        }
+        return this.<T>getPunishments(player, service, type).thenApply(punishments -> {
+            final int end = Math.min(punishments.size(), offset + pageSize);
+            final List<T> page = offset >= end ? List.of() : List.copyOf(punishments.subList(offset, end));
+            return new PunishmentPage<>(page, end < punishments.size() ? String.valueOf(end) : null);
+        });
+    }
+
     /**
      * Queries the punishment stored with the given {@code punishmentId}
      *
@@ -26,18 +26,36 @@ package de.jvstvshd.velocitypunishment.api.punishment;
 
 public enum StandardPunishmentType implements PunishmentType {
 
-    BAN(false, "BAN"),
-    PERMANENT_BAN(true, "PERMANENT_BAN"),
-    MUTE(false, "MUTE"),
-    PERMANENT_MUTE(true, "PERMANENT_MUTE"),
-    KICK(false, "KICK");
+    BAN(false, "BAN", 1),
+    PERMANENT_BAN(true, "PERMANENT_BAN", 2),
+    MUTE(false, "MUTE", 3),
+    PERMANENT_MUTE(true, "PERMANENT_MUTE", 4),
+    KICK(false, "KICK", 5);
 
     private final boolean isPermanent;
     private final String typeString;
+    private final int id;
 
-    StandardPunishmentType(boolean isPermanent, String typeString) {
+    StandardPunishmentType(boolean isPermanent, String typeString, int id) {
         this.isPermanent = isPermanent;
         this.typeString = typeString;
+        this.id = id;
+    }
+
+    /**
+     * Returns the type with the given {@link #getId() id}.
+     *
+     * @param id the id of the type
+     * @return the type with the given id
+     * @throws IllegalArgumentException if there is no type with this id
+     */
+    public static StandardPunishmentType getById(int id) {
+        for (StandardPunishmentType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("unknown punishment type id: " + id);
     }
 
     public boolean isPermanent() {
@@ -48,4 +66,11 @@ public enum StandardPunishmentType implements PunishmentType {
     public String getName() {
         return typeString;
     }
+
+    /**
+     * @return the stable numeric id of this type, which is used to store it
+     */
+    public int getId() {
+        return id;
+    }
 }
@@ -15,6 +15,7 @@ dependencies {
     compileOnly(libs.luckperms.api)
     implementation(libs.jackson.databind)
     implementation(libs.bundles.database)
+    testImplementation(libs.velocity.api)
     testImplementation(libs.junit.jupiter.api)
     testRuntimeOnly(libs.junit.jupiter.engine)
 }
@@ -32,7 +33,10 @@ tasks.getByName<Test>("test") {
 
 tasks {
     shadowJar {
-        minimize()
+        minimize {
+            // the driver is loaded by name through JDBC and Hikari, which minimize() cannot see
+            exclude(dependency("com.h2database:h2:.*"))
+        }
         archiveBaseName.set("velocity-punishment")
     }
     build {
@@ -29,33 +29,47 @@ import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.event.EventManager;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import de.jvstvshd.velocitypunishment.api.VelocityPunishment;
 import de.jvstvshd.velocitypunishment.api.message.MessageProvider;
 import de.jvstvshd.velocitypunishment.api.punishment.PunishmentManager;
 import de.jvstvshd.velocitypunishment.api.punishment.util.PlayerResolver;
+import de.jvstvshd.velocitypunishment.cache.CleanRecordCache;
+import de.jvstvshd.velocitypunishment.cache.ExpiryScheduler;
+import de.jvstvshd.velocitypunishment.cache.PunishmentCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentIdCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentSnapshot;
+import de.jvstvshd.velocitypunishment.cache.WhitelistCache;
 import de.jvstvshd.velocitypunishment.commands.*;
+import de.jvstvshd.velocitypunishment.config.ConfigData;
 import de.jvstvshd.velocitypunishment.config.ConfigurationManager;
+import de.jvstvshd.velocitypunishment.config.StorageType;
 import de.jvstvshd.velocitypunishment.impl.DefaultPlayerResolver;
 import de.jvstvshd.velocitypunishment.impl.DefaultPunishmentManager;
+import de.jvstvshd.velocitypunishment.impl.WriteBehindQueue;
+import de.jvstvshd.velocitypunishment.internal.Util;
 import de.jvstvshd.velocitypunishment.listener.ChatListener;
 import de.jvstvshd.velocitypunishment.listener.ConnectListener;
 import de.jvstvshd.velocitypunishment.message.ResourceBundleMessageProvider;
+import de.jvstvshd.velocitypunishment.storage.H2PunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.LogPunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.MariaDbPunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.util.Properties;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @Plugin(id = "velocity-punishment", name = "Velocity Punishment Plugin", version = "1.0.0-SNAPSHOT", description = "A simple punishment plugin for Velocity", authors = {"JvstvsHD"})
 public class VelocityPunishmentPlugin implements VelocityPunishment {
@@ -64,8 +78,18 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
     private final Logger logger;
     private final ConfigurationManager configurationManager;
     private final ExecutorService service = Executors.newCachedThreadPool();
+    private final PunishmentCache punishmentCache = new PunishmentCache();
+    private final WhitelistCache whitelistCache = new WhitelistCache();
+    private final PunishmentSnapshot snapshot;
+    private final Path dataDirectory;
+    private final CleanRecordCache cleanRecordCache = new CleanRecordCache(1 << 16, Duration.ofMinutes(10));
+    private final PunishmentIdCache punishmentIdCache = new PunishmentIdCache(1024);
+    private ExpiryScheduler expiryScheduler;
+    private ChatListener chatListener;
+    private WriteBehindQueue writeBehindQueue;
     private PunishmentManager punishmentManager;
-    private HikariDataSource dataSource;
+    private PunishmentStorage storage;
+    private volatile boolean storageInitialized = false;
     private PlayerResolver playerResolver;
     private MessageProvider messageProvider;
 
@@ -73,8 +97,10 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
     public VelocityPunishmentPlugin(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
         this.server = server;
         this.logger = logger;
+        this.dataDirectory = dataDirectory;
         this.configurationManager = new ConfigurationManager(Paths.get(dataDirectory.toAbsolutePath().toString(), "config.json"));
         this.playerResolver = new DefaultPlayerResolver(server);
+        this.snapshot = new PunishmentSnapshot(Paths.get(dataDirectory.toAbsolutePath().toString(), "punishment-snapshot.json"));
     }
 
     @Subscribe
@@ -88,20 +114,42 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
         } catch (IOException e) {
             logger.error("Could not load configuration", e);
         }
-        dataSource = createDataSource();
-        punishmentManager = new DefaultPunishmentManager(server, dataSource, this);
-        try {
-            initDataSource();
-        } catch (SQLException e) {
-            logger.error("Could not create table velocity_punishment in database " + dataSource.getDataSourceProperties().get("dataSource.databaseName"), e);
+        storage = createStorage();
+        var writeBehindBatchSize = configurationManager.getConfiguration().getWriteBehindBatchSize();
+        if (writeBehindBatchSize > 0) {
+            writeBehindQueue = new WriteBehindQueue(storage, logger, writeBehindBatchSize, configurationManager.getConfiguration().getWriteBehindWindow());
+            writeBehindQueue.start();
+        }
+        var defaultPunishmentManager = new DefaultPunishmentManager(server, storage, this);
+        punishmentManager = defaultPunishmentManager;
+        server.getScheduler().buildTask(this, this::maintainStorage).delay(10, TimeUnit.MINUTES).repeat(10, TimeUnit.MINUTES).schedule();
+        chatListener = new ChatListener(this);
+        expiryScheduler = new ExpiryScheduler(this, chatListener);
+        punishmentCache.setExpiryScheduler(expiryScheduler);
+        expiryScheduler.start();
+        loadPunishmentCache(defaultPunishmentManager);
+        var snapshotInterval = configurationManager.getConfiguration().getSnapshotInterval();
+        if (snapshotInterval > 0) {
+            server.getScheduler().buildTask(this, () -> writeSnapshot(defaultPunishmentManager))
+                    .delay(snapshotInterval, TimeUnit.MINUTES).repeat(snapshotInterval, TimeUnit.MINUTES).schedule();
         }
-        setup(server.getCommandManager(), server.getEventManager());
+        setup(server.getCommandManager(), server.getEventManager(), chatListener);
         logger.info("Velocity Punishment Plugin v1.0.0 has been loaded");
     }
 
-    private void setup(CommandManager commandManager, EventManager eventManager) {
-        ChatListener chatListener = new ChatListener(this);
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        if (writeBehindQueue != null) {
+            try {
+                writeBehindQueue.shutdown(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                logger.error("Interrupted while flushing pending punishment writes", e);
+            }
+        }
+        storage.close();
+    }
 
+    private void setup(CommandManager commandManager, EventManager eventManager, ChatListener chatListener) {
         eventManager.register(this, new ConnectListener(this, Executors.newCachedThreadPool(), server, chatListener));
         eventManager.register(this, chatListener);
 
@@ -117,30 +165,111 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
         commandManager.register(commandManager.metaBuilder("whitelist").build(), new WhitelistCommand(this));
     }
 
-    private HikariDataSource createDataSource() {
-        var dbData = configurationManager.getConfiguration().getDataBaseData();
-        var properties = new Properties();
-        properties.setProperty("dataSource.databaseName", dbData.getDatabase());
-        properties.setProperty("dataSource.serverName", dbData.getHost());
-        properties.setProperty("dataSource.portNumber", dbData.getPort());
-        properties.setProperty("dataSourceClassName", org.mariadb.jdbc.MariaDbDataSource.class.getName());
-        properties.setProperty("dataSource.user", dbData.getUsername());
-        properties.setProperty("dataSource.password", dbData.getPassword());
-        var config = new HikariConfig(properties);
-        config.setPoolName("velocity-punishment-hikari");
-        return new HikariDataSource(config);
-    }
-
-    private void initDataSource() throws SQLException {
-        try (Connection connection = dataSource.getConnection(); PreparedStatement statement =
-                connection.prepareStatement("CREATE TABLE IF NOT EXISTS velocity_punishment (uuid  VARCHAR (36), name VARCHAR (16), type VARCHAR (1000), expiration DATETIME (6), " +
-                        "reason VARCHAR (1000), punishment_id VARCHAR (36))")) {
-            statement.execute();
+    /**
+     * Initializes the storage if this has not succeeded yet and loads all active punishments into the cache. If either fails,
+     * login and chat decisions are served from the last snapshot (or fall back to storage queries and the configured fail
+     * open policy) and both steps are retried every 30 seconds. Once loaded, the cache is reloaded in the configured
+     * {@link ConfigData#getCacheRefreshInterval() interval} to pick up punishments of other proxies.
+     */
+    private void loadPunishmentCache(DefaultPunishmentManager punishmentManager) {
+        final long start = System.nanoTime();
+        final boolean refresh = punishmentCache.isLoaded() && !snapshot.isActive();
+        initStorage().thenCompose(unused -> punishmentManager.loadCache()).whenComplete((count, throwable) -> {
+            if (throwable == null) {
+                final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (snapshot.isActive()) {
+                    snapshot.setActive(false);
+                    logger.info("Database is available again, replaced punishment snapshot with " + count + " punishments in " + duration + "ms");
+                } else if (refresh) {
+                    logger.debug("Reloaded " + count + " punishments into cache in " + duration + "ms");
+                } else {
+                    logger.info("Loaded " + count + " punishments into cache in " + duration + "ms");
+                }
+                chatListener.refreshFromCache();
+                scheduleCacheRefresh(punishmentManager);
+                return;
+            }
+            if (refresh) {
+                logger.warn("Could not reload punishments into cache, retrying in 30 seconds", throwable);
+            } else if (!snapshot.isActive()) {
+                logger.error("Could not load punishments into cache", throwable);
+                restoreSnapshot(punishmentManager);
+            }
+            server.getScheduler().buildTask(this, () -> loadPunishmentCache(punishmentManager)).delay(30, TimeUnit.SECONDS).schedule();
+        });
+    }
+
+    private void scheduleCacheRefresh(DefaultPunishmentManager punishmentManager) {
+        var config = configurationManager.getConfiguration();
+        if (config.getStorageType() != StorageType.MARIADB || config.getCacheRefreshInterval() <= 0) {
+            return;
         }
-        try (Connection connection = dataSource.getConnection(); PreparedStatement statement =
-                connection.prepareStatement("CREATE TABLE IF NOT EXISTS velocity_punishment_whitelist (uuid VARCHAR (36))")) {
-            statement.execute();
+        server.getScheduler().buildTask(this, () -> loadPunishmentCache(punishmentManager)).delay(config.getCacheRefreshInterval(), TimeUnit.SECONDS).schedule();
+    }
+
+    private CompletableFuture<Void> initStorage() {
+        if (storageInitialized) {
+            return CompletableFuture.completedFuture(null);
         }
+        return Util.executeAsync(() -> {
+            storage.init();
+            storageInitialized = true;
+            whitelistCache.load(storage, service).whenComplete((count, throwable) -> {
+                if (throwable != null) {
+                    logger.error("Could not load whitelist into cache, falling back to database queries", throwable);
+                    return;
+                }
+                logger.info("Loaded " + count + " whitelisted players into cache");
+            });
+            return null;
+        }, service);
+    }
+
+    private void restoreSnapshot(DefaultPunishmentManager punishmentManager) {
+        try {
+            var content = snapshot.read();
+            if (content.isEmpty()) {
+                logger.warn("No punishment snapshot available, falling back to database queries");
+                return;
+            }
+            punishmentManager.restoreSnapshot(content.get().punishments());
+            snapshot.setActive(true);
+            logger.warn("Database is not available, serving login and chat decisions from the punishment snapshot of " +
+                    Instant.ofEpochMilli(content.get().createdAt()) + " (" + content.get().punishments().size() + " punishments)");
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not restore punishment snapshot", e);
+        }
+    }
+
+    private void writeSnapshot(DefaultPunishmentManager punishmentManager) {
+        if (!punishmentCache.isLoaded() || snapshot.isActive()) {
+            return;
+        }
+        try {
+            snapshot.write(punishmentManager.createSnapshot());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not write punishment snapshot", e);
+        }
+    }
+
+    private void maintainStorage() {
+        if (!storageInitialized) {
+            return;
+        }
+        try {
+            storage.maintain();
+        } catch (StorageException e) {
+            logger.error("Could not maintain punishment storage", e);
+        }
+    }
+
+    private PunishmentStorage createStorage() {
+        var config = configurationManager.getConfiguration();
+        return switch (config.getStorageType()) {
+            case MARIADB -> new MariaDbPunishmentStorage(config.getDataBaseData(), logger);
+            case H2 -> new H2PunishmentStorage(dataDirectory.resolve("punishments"), logger);
+            case LOG -> new LogPunishmentStorage(dataDirectory.resolve("punishment-log"), logger);
+        };
     }
 
     @Override
@@ -173,8 +302,8 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
         return service;
     }
 
-    public HikariDataSource getDataSource() {
-        return dataSource;
+    public PunishmentStorage getStorage() {
+        return storage;
     }
 
     @Override
@@ -187,6 +316,34 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
         this.messageProvider = messageProvider;
     }
 
+    public PunishmentCache getPunishmentCache() {
+        return punishmentCache;
+    }
+
+    public PunishmentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public ExpiryScheduler getExpiryScheduler() {
+        return expiryScheduler;
+    }
+
+    public CleanRecordCache getCleanRecordCache() {
+        return cleanRecordCache;
+    }
+
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    public PunishmentIdCache getPunishmentIdCache() {
+        return punishmentIdCache;
+    }
+
+    public WhitelistCache getWhitelistCache() {
+        return whitelistCache;
+    }
+
     public Logger getLogger() {
         return logger;
     }
@@ -194,4 +351,8 @@ public class VelocityPunishmentPlugin implements VelocityPunishment {
     public boolean whitelistActive() {
         return configurationManager.getConfiguration().isWhitelistActivated();
     }
+
+    public ConfigData getConfig() {
+        return configurationManager.getConfiguration();
+    }
 }
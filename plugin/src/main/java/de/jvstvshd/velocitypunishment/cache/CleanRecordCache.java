@@ -0,0 +1,137 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.cache;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Bounded negative cache remembering players that have neither an active ban nor an active mute. Entries expire after
+ * a fixed time to live and are stored as primitive uuid halves in an open addressing table, so this cache does not
+ * allocate per entry. If a bucket is full, the entry expiring first is evicted.<br>
+ * To avoid storing stale results, a lookup should obtain a {@link #stamp()} before querying the database and pass it to
+ * {@link #markClean(UUID, long)}; results are discarded if the cache was invalidated in the meantime.
+ */
+public class CleanRecordCache {
+
+    private static final int MAX_PROBES = 8;
+
+    private final long[] mostSignificantBits;
+    private final long[] leastSignificantBits;
+    private final long[] expirations;
+    private final int mask;
+    private final long ttlMillis;
+    private long invalidations = 0;
+
+    /**
+     * @param capacity the maximum amount of entries, rounded up to the next power of two
+     * @param ttl      the duration after which an entry expires
+     */
+    public CleanRecordCache(int capacity, Duration ttl) {
+        int size = Integer.highestOneBit(Math.max(MAX_PROBES, capacity) - 1) << 1;
+        this.mostSignificantBits = new long[size];
+        this.leastSignificantBits = new long[size];
+        this.expirations = new long[size];
+        this.mask = size - 1;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    /**
+     * @return the current invalidation stamp to pass to {@link #markClean(UUID, long)}
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Remembers that the given player has a clean record, unless an invalidation happened since the given stamp was obtained.
+     *
+     * @param uuid  the uuid of the player
+     * @param stamp the stamp obtained via {@link #stamp()} before querying the player's punishments
+     */
+    public synchronized void markClean(UUID uuid, long stamp) {
+        if (stamp != invalidations) {
+            return;
+        }
+        final long most = uuid.getMostSignificantBits(), least = uuid.getLeastSignificantBits();
+        final long now = System.currentTimeMillis();
+        int target = find(most, least);
+        if (target == -1) {
+            target = index(most, least);
+            for (int i = 1, index = (target + 1) & mask; i < MAX_PROBES; i++, index = (index + 1) & mask) {
+                if (expirations[index] < expirations[target]) {
+                    target = index;
+                }
+            }
+        }
+        mostSignificantBits[target] = most;
+        leastSignificantBits[target] = least;
+        expirations[target] = now + ttlMillis;
+    }
+
+    /**
+     * @param uuid the uuid of the player
+     * @return true if the player is known to have a clean record
+     */
+    public synchronized boolean isClean(UUID uuid) {
+        int index = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (index == -1) {
+            return false;
+        }
+        if (expirations[index] <= System.currentTimeMillis()) {
+            expirations[index] = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the given player from this cache. This has to be called once a ban or mute was imposed on this player.
+     *
+     * @param uuid the uuid of the player
+     */
+    public synchronized void invalidate(UUID uuid) {
+        invalidations++;
+        int index = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (index != -1) {
+            expirations[index] = 0;
+        }
+    }
+
+    private int find(long most, long least) {
+        for (int i = 0, index = index(most, least); i < MAX_PROBES; i++, index = (index + 1) & mask) {
+            if (expirations[index] != 0 && mostSignificantBits[index] == most && leastSignificantBits[index] == least) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int index(long most, long least) {
+        long hash = most ^ least;
+        int h = (int) (hash ^ (hash >>> 32));
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
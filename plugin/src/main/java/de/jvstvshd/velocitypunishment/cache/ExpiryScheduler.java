@@ -0,0 +1,139 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.cache;
+
+import de.jvstvshd.velocitypunishment.VelocityPunishmentPlugin;
+import de.jvstvshd.velocitypunishment.api.punishment.Mute;
+import de.jvstvshd.velocitypunishment.api.punishment.TemporalPunishment;
+import de.jvstvshd.velocitypunishment.listener.ChatListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proactively removes expired bans and mutes from memory. Punishments are kept in a priority queue ordered by their
+ * expiration, which is polled once per second. Replaced and cancelled punishments leave the queue right away, so it never
+ * holds more entries than there are scheduled punishments. Expired punishments are evicted from the {@link PunishmentCache}
+ * and the {@link ChatListener}, muted players are informed and the punishment is removed from the database in the background.
+ */
+public class ExpiryScheduler {
+
+    private final VelocityPunishmentPlugin plugin;
+    private final ChatListener chatListener;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingLong(Entry::expiration));
+    private final Map<UUID, Entry> scheduled = new ConcurrentHashMap<>();
+
+    public ExpiryScheduler(VelocityPunishmentPlugin plugin, ChatListener chatListener) {
+        this.plugin = plugin;
+        this.chatListener = chatListener;
+    }
+
+    /**
+     * Starts polling for expired punishments.
+     */
+    public void start() {
+        plugin.getServer().getScheduler().buildTask(plugin, this::expireDue).repeat(1, TimeUnit.SECONDS).schedule();
+    }
+
+    /**
+     * Schedules the expiry of the given punishment. A previously scheduled expiry of a punishment with the same id is replaced.
+     * Permanent punishments are not scheduled.
+     *
+     * @param player     the uuid of the punished player
+     * @param punishment the punishment
+     */
+    public void schedule(UUID player, TemporalPunishment punishment) {
+        if (punishment.getDuration().isPermanent()) {
+            unschedule(punishment.getPunishmentUuid());
+            return;
+        }
+        Entry entry = new Entry(player, punishment, punishment.getDuration().expirationMillis());
+        synchronized (queue) {
+            Entry previous = scheduled.put(punishment.getPunishmentUuid(), entry);
+            if (previous != null) {
+                queue.remove(previous);
+            }
+            queue.add(entry);
+        }
+    }
+
+    /**
+     * Removes the scheduled expiry of the punishment with the given id, e.g. because it was cancelled.
+     *
+     * @param punishmentId the id of the punishment
+     */
+    public void unschedule(UUID punishmentId) {
+        synchronized (queue) {
+            Entry entry = scheduled.remove(punishmentId);
+            if (entry != null) {
+                queue.remove(entry);
+            }
+        }
+    }
+
+    private void expireDue() {
+        final long now = System.currentTimeMillis();
+        List<Entry> due = new ArrayList<>();
+        synchronized (queue) {
+            while (!queue.isEmpty() && queue.peek().expiration() <= now) {
+                Entry entry = queue.poll();
+                if (scheduled.remove(entry.punishment().getPunishmentUuid(), entry)) {
+                    due.add(entry);
+                }
+            }
+        }
+        for (Entry entry : due) {
+            expire(entry.player(), entry.punishment());
+        }
+    }
+
+    private void expire(UUID player, TemporalPunishment punishment) {
+        plugin.getPunishmentCache().remove(player, punishment.getPunishmentUuid());
+        if (punishment instanceof Mute mute) {
+            chatListener.onExpiry(player, mute);
+        }
+        punishment.cancel().whenComplete((unused, throwable) -> {
+            if (throwable != null) {
+                plugin.getLogger().error("Could not remove expired punishment " + punishment.getPunishmentUuid(), throwable);
+            }
+        });
+    }
+
+    /**
+     * @return the amount of punishments whose expiry is scheduled
+     */
+    public int size() {
+        return scheduled.size();
+    }
+
+    private record Entry(UUID player, TemporalPunishment punishment, long expiration) {
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.cache;
+
+import com.google.common.collect.ImmutableList;
+import de.jvstvshd.velocitypunishment.api.punishment.Ban;
+import de.jvstvshd.velocitypunishment.api.punishment.Mute;
+import de.jvstvshd.velocitypunishment.api.punishment.TemporalPunishment;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident index of all bans and mutes, keyed by the uuid of the punished player. Once {@link #isLoaded() loaded},
+ * login and chat decisions are made from this index without querying the database. Punishments issued on other proxies
+ * sharing the database only show up once the index is reloaded, see
+ * {@link de.jvstvshd.velocitypunishment.config.ConfigData#getCacheRefreshInterval()}.
+ * <p>
+ * A reload reads the storage while punishments may still be added or removed. Every load is therefore started with
+ * {@link #beginLoad()}; players whose punishments changed afterwards keep their current entries when the loaded
+ * punishments are applied with {@link #replaceAll(Map, long)}.
+ */
+public class PunishmentCache {
+
+    private final Map<UUID, List<TemporalPunishment>> punishments = new ConcurrentHashMap<>();
+    private final Map<String, UUID> playerNames = new ConcurrentHashMap<>();
+    private final Map<String, UUID> confirmedNames = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> modified = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean loading = false;
+    private volatile boolean loaded = false;
+    private volatile ExpiryScheduler expiryScheduler;
+
+    /**
+     * Adds the given punishment to the index. A punishment with the same id that is already present will be replaced.
+     *
+     * @param player     the uuid of the punished player
+     * @param punishment the punishment to add
+     */
+    public void add(UUID player, TemporalPunishment punishment) {
+        punishments.compute(player, (uuid, current) -> {
+            List<TemporalPunishment> updated = current == null ? new ArrayList<>() : new ArrayList<>(current);
+            updated.removeIf(cached -> cached.getPunishmentUuid().equals(punishment.getPunishmentUuid()));
+            updated.add(punishment);
+            touch(uuid);
+            return ImmutableList.copyOf(updated);
+        });
+        schedule(player, punishment);
+    }
+
+    /**
+     * Removes the punishment with the given id from the index. If the player has no punishments left, their names are
+     * removed from the name index as well.
+     *
+     * @param player       the uuid of the punished player
+     * @param punishmentId the id of the punishment to remove
+     */
+    public void remove(UUID player, UUID punishmentId) {
+        punishments.computeIfPresent(player, (uuid, current) -> {
+            List<TemporalPunishment> updated = new ArrayList<>(current);
+            updated.removeIf(cached -> cached.getPunishmentUuid().equals(punishmentId));
+            touch(uuid);
+            if (updated.isEmpty()) {
+                playerNames.values().removeIf(player::equals);
+                confirmedNames.values().removeIf(player::equals);
+                return null;
+            }
+            return ImmutableList.copyOf(updated);
+        });
+        if (expiryScheduler != null) {
+            expiryScheduler.unschedule(punishmentId);
+        }
+    }
+
+    /**
+     * Marks the start of a load of this index. Changes made from now on take precedence over the punishments passed to
+     * {@link #replaceAll(Map, long)} with the returned generation.
+     *
+     * @return the generation of the load
+     */
+    public long beginLoad() {
+        loading = true;
+        return generation.incrementAndGet();
+    }
+
+    private void touch(UUID player) {
+        if (loading) {
+            modified.put(player, generation.incrementAndGet());
+        }
+    }
+
+    /**
+     * Replaces the content of this index with the given punishments. Players that are not contained in the given map are
+     * removed, together with their names, unless their punishments were changed after the load was started.
+     *
+     * @param loaded     all bans and mutes, grouped by the uuid of the punished player
+     * @param generation the generation returned by {@link #beginLoad()} before the punishments were read
+     */
+    public void replaceAll(Map<UUID, List<TemporalPunishment>> loaded, long generation) {
+        Set<UUID> players = new HashSet<>(punishments.keySet());
+        players.addAll(loaded.keySet());
+        for (UUID player : players) {
+            punishments.compute(player, (uuid, current) -> {
+                if (modified.getOrDefault(uuid, 0L) > generation) {
+                    return current;
+                }
+                List<TemporalPunishment> replacement = loaded.getOrDefault(uuid, List.of());
+                Map<UUID, TemporalPunishment> previous = new HashMap<>();
+                if (current != null) {
+                    current.forEach(punishment -> previous.put(punishment.getPunishmentUuid(), punishment));
+                }
+                for (TemporalPunishment punishment : replacement) {
+                    TemporalPunishment old = previous.remove(punishment.getPunishmentUuid());
+                    if (old == null || old.getDuration().expirationMillis() != punishment.getDuration().expirationMillis()) {
+                        schedule(uuid, punishment);
+                    }
+                }
+                if (expiryScheduler != null) {
+                    previous.keySet().forEach(expiryScheduler::unschedule);
+                }
+                return replacement.isEmpty() ? null : ImmutableList.copyOf(replacement);
+            });
+        }
+        playerNames.values().retainAll(punishments.keySet());
+        confirmedNames.values().retainAll(punishments.keySet());
+        modified.values().removeIf(stamp -> stamp <= generation);
+        loading = false;
+    }
+
+    /**
+     * Sets the scheduler that is informed about every punishment entering or leaving this index. Punishments that are
+     * already present are scheduled immediately.
+     *
+     * @param expiryScheduler the scheduler removing expired punishments
+     */
+    public void setExpiryScheduler(ExpiryScheduler expiryScheduler) {
+        this.expiryScheduler = expiryScheduler;
+        punishments.forEach((uuid, list) -> list.forEach(punishment -> schedule(uuid, punishment)));
+    }
+
+    private void schedule(UUID player, TemporalPunishment punishment) {
+        if (expiryScheduler != null) {
+            expiryScheduler.schedule(player, punishment);
+        }
+    }
+
+    /**
+     * @return a copy of all bans and mutes, grouped by the uuid of the punished player
+     */
+    public Map<UUID, List<TemporalPunishment>> getAll() {
+        return Map.copyOf(punishments);
+    }
+
+    /**
+     * @return a copy of the name index, mapping the lower case names of punished players to their uuids
+     */
+    public Map<String, UUID> getPlayerNames() {
+        return Map.copyOf(playerNames);
+    }
+
+    /**
+     * @param player the uuid of the player
+     * @return all bans and mutes of this player, or an empty list if there are none
+     */
+    public List<TemporalPunishment> getPunishments(UUID player) {
+        return punishments.getOrDefault(player, ImmutableList.of());
+    }
+
+    public List<Ban> getBans(UUID player) {
+        return filter(player, Ban.class);
+    }
+
+    public List<Mute> getMutes(UUID player) {
+        return filter(player, Mute.class);
+    }
+
+    /**
+     * Remembers the name a player had when being punished. This is used to identify punished players before their uuid is known.
+     * The name is forgotten once the player has no punishments left.
+     *
+     * @param name   the name of the player
+     * @param player the uuid of the player
+     */
+    public void putPlayerName(String name, UUID player) {
+        playerNames.put(name.toLowerCase(Locale.ROOT), player);
+    }
+
+    /**
+     * @param name the name of the player
+     * @return the uuid of the punished player with the given name, or {@link Optional#empty()} if no such player is known
+     */
+    public Optional<UUID> getPlayerUuid(String name) {
+        return Optional.ofNullable(playerNames.get(name.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Records that a player authenticated with the given name. If the player is punished, the name is confirmed to belong
+     * to them; if the name was remembered for another player, who must have changed their name since, it is forgotten.
+     *
+     * @param name   the name the player authenticated with
+     * @param player the uuid of the player
+     */
+    public void confirmPlayerName(String name, UUID player) {
+        final String key = name.toLowerCase(Locale.ROOT);
+        playerNames.computeIfPresent(key, (unused, uuid) -> uuid.equals(player) ? uuid : null);
+        confirmedNames.computeIfPresent(key, (unused, uuid) -> uuid.equals(player) ? uuid : null);
+        punishments.computeIfPresent(player, (uuid, current) -> {
+            playerNames.put(key, uuid);
+            confirmedNames.put(key, uuid);
+            return current;
+        });
+    }
+
+    /**
+     * @param name the name of the player
+     * @return the uuid of the punished player who last authenticated with the given name, or {@link Optional#empty()} if
+     * no punished player authenticated with this name
+     * @see #confirmPlayerName(String, UUID)
+     */
+    public Optional<UUID> getConfirmedPlayerUuid(String name) {
+        return Optional.ofNullable(confirmedNames.get(name.toLowerCase(Locale.ROOT)));
+    }
+
+    private <T extends TemporalPunishment> List<T> filter(UUID player, Class<T> type) {
+        List<T> filtered = new ArrayList<>();
+        for (TemporalPunishment punishment : getPunishments(player)) {
+            if (type.isInstance(punishment)) {
+                filtered.add(type.cast(punishment));
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Marks this index as complete. Until then, callers have to fall back to the database.
+     */
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return punishments.values().stream().mapToInt(List::size).sum();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.cache;
+
+import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache of punishments by their id. Once full, the least recently used punishment is evicted.
+ */
+public class PunishmentIdCache {
+
+    private final Map<UUID, Punishment> punishments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PunishmentIdCache(int capacity) {
+        this.punishments = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Punishment> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param punishmentId the id of the punishment
+     * @return the cached punishment or {@link Optional#empty()} if it is not cached
+     */
+    public Optional<Punishment> get(UUID punishmentId) {
+        final Punishment punishment;
+        synchronized (punishments) {
+            punishment = punishments.get(punishmentId);
+        }
+        (punishment == null ? misses : hits).incrementAndGet();
+        return Optional.ofNullable(punishment);
+    }
+
+    public void put(Punishment punishment) {
+        synchronized (punishments) {
+            punishments.put(punishment.getPunishmentUuid(), punishment);
+        }
+    }
+
+    /**
+     * Removes the punishment with the given id, e.g. because it was cancelled or changed.
+     *
+     * @param punishmentId the id of the punishment
+     */
+    public void invalidate(UUID punishmentId) {
+        synchronized (punishments) {
+            punishments.remove(punishmentId);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (punishments) {
+            return punishments.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PunishmentIdCache{" +
+                "size=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local copy of all cached bans and mutes, stored in the plugin's data directory. If the database is not available, login
+ * and chat decisions are made based on the last snapshot. This class also keeps track of how often such a fallback was used.
+ */
+public class PunishmentSnapshot {
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong fallbackDecisions = new AtomicLong();
+    private volatile boolean active = false;
+
+    public PunishmentSnapshot(Path path) {
+        this.path = path;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Writes the given entries to disk. The file is replaced atomically, so a crash while writing does not corrupt the last snapshot.
+     *
+     * @param entries the entries to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(List<Entry> entries) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        objectMapper.writeValue(temporary.toFile(), new Content(System.currentTimeMillis(), entries));
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the content of the last snapshot or {@link Optional#empty()} if there is none
+     * @throws IOException if an I/O error occurs
+     */
+    public Optional<Content> read() throws IOException {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        return Optional.of(objectMapper.readValue(path.toFile(), Content.class));
+    }
+
+    /**
+     * Counts a decision that could not be made with up-to-date data from the database.
+     *
+     * @return the total amount of fallback decisions
+     */
+    public long recordFallbackDecision() {
+        return fallbackDecisions.incrementAndGet();
+    }
+
+    public long getFallbackDecisions() {
+        return fallbackDecisions.get();
+    }
+
+    /**
+     * @return whether the punishment cache currently holds the content of this snapshot instead of data loaded from the database
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * @param createdAt   the time this snapshot was created at, in epoch milliseconds
+     * @param punishments all bans and mutes at this time
+     */
+    public record Content(long createdAt, List<Entry> punishments) {
+    }
+
+    /**
+     * @param player       the uuid of the punished player
+     * @param name         the name of the punished player, may be null
+     * @param type         the name of the {@link de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType}
+     * @param expiration   the expiration in epoch milliseconds
+     * @param reason       the reason, serialized with legacy section color codes
+     * @param punishmentId the id of the punishment
+     */
+    public record Entry(String player, String name, String type, long expiration, String reason, String punishmentId) {
+    }
+}
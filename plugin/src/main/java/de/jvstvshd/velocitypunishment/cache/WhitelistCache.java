@@ -0,0 +1,74 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.cache;
+
+import de.jvstvshd.velocitypunishment.internal.Util;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Resident set of all whitelisted players. Once {@link #isLoaded() loaded}, whitelist checks are simple hash lookups.
+ */
+public class WhitelistCache {
+
+    private final Set<UUID> whitelisted = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded = false;
+
+    /**
+     * Loads all whitelisted players from the storage.
+     *
+     * @param storage    the storage to load the whitelist from
+     * @param executor   an {@link Executor} used for async operations
+     * @return a {@link CompletableFuture} being completed with the amount of whitelisted players
+     */
+    public CompletableFuture<Integer> load(PunishmentStorage storage, Executor executor) {
+        return Util.executeAsync(() -> {
+            whitelisted.addAll(storage.loadWhitelist());
+            loaded = true;
+            return whitelisted.size();
+        }, executor);
+    }
+
+    public void add(UUID player) {
+        whitelisted.add(player);
+    }
+
+    public void remove(UUID player) {
+        whitelisted.remove(player);
+    }
+
+    public boolean isWhitelisted(UUID player) {
+        return whitelisted.contains(player);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+}
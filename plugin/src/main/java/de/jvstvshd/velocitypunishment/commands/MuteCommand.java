@@ -36,8 +36,6 @@ import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
 
 import static de.jvstvshd.velocitypunishment.internal.Util.copyComponent;
 
@@ -76,11 +74,7 @@ public class MuteCommand implements SimpleCommand {
                     source.sendMessage(plugin.getMessageProvider().provide("commands.general.punishment.id", source, true, copyComponent(mute.getPunishmentUuid().toString().toLowerCase(), plugin.getMessageProvider(), source).color(NamedTextColor.YELLOW)));
                 }
                 if (plugin.getServer().getPlayer(uuid).isPresent()) {
-                    try {
-                        chatListener.update(uuid);
-                    } catch (ExecutionException | TimeoutException | InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                    chatListener.update(uuid);
                 }
             });
         }, plugin.getService());
@@ -30,37 +30,33 @@ import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.ProxyServer;
 import de.jvstvshd.velocitypunishment.VelocityPunishmentPlugin;
 import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
 import de.jvstvshd.velocitypunishment.internal.PunishmentHelper;
 import de.jvstvshd.velocitypunishment.internal.Util;
 import de.jvstvshd.velocitypunishment.listener.ChatListener;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.event.HoverEvent;
 import net.kyori.adventure.text.event.HoverEventSource;
 import net.kyori.adventure.text.format.NamedTextColor;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeoutException;
 
 public class PunishmentCommand implements SimpleCommand {
 
     private final ExecutorService service;
-    private final DataSource dataSource;
+    private final PunishmentStorage storage;
     private final ProxyServer server;
     private final ChatListener chatListener;
     private final VelocityPunishmentPlugin plugin;
 
     public PunishmentCommand(VelocityPunishmentPlugin plugin, ChatListener chatListener) {
         this.service = plugin.getService();
-        this.dataSource = plugin.getDataSource();
+        this.storage = plugin.getStorage();
         this.server = plugin.getServer();
         this.chatListener = chatListener;
         this.plugin = plugin;
@@ -68,6 +64,7 @@ public class PunishmentCommand implements SimpleCommand {
 
     private final static List<String> PUNISHMENT_OPTIONS = ImmutableList.of("cancel", "remove", "info", "change");
     private final static List<String> ALL_OPTIONS;
+    private final static int HISTORY_PAGE_SIZE = 50;
 
     static {
         var full = new ArrayList<>(PUNISHMENT_OPTIONS);
@@ -97,21 +94,7 @@ public class PunishmentCommand implements SimpleCommand {
                     source.sendMessage(plugin.getMessageProvider().provide("command.punishment.not-banned", source, true).color(NamedTextColor.RED));
                     return;
                 }
-                punishmentManager.getPunishments(uuid, service).whenComplete((punishments, t) -> {
-                    if (t != null) {
-                        source.sendMessage(plugin.getMessageProvider().internalError(source, true));
-                        t.printStackTrace();
-                        return;
-                    }
-                    source.sendMessage(plugin.getMessageProvider().provide("command.punishment.punishments", source, true, Component.text(punishments.size())).color(NamedTextColor.AQUA));
-                    for (Punishment punishment : punishments) {
-                        Component component = helper.buildPunishmentData(punishment, plugin.getMessageProvider(), source)
-                                .clickEvent(ClickEvent.suggestCommand(punishment.getPunishmentUuid().toString().toLowerCase(Locale.ROOT)))
-                                .hoverEvent((HoverEventSource<Component>) op -> HoverEvent.showText(plugin.getMessageProvider().provide("commands.general.copy")
-                                        .color(NamedTextColor.GREEN)));
-                        source.sendMessage(component);
-                    }
-                });
+                sendPlayerInfo(uuid, arguments[1], arguments.length > 2 ? arguments[2] : null, source, helper);
             }, service);
             return;
         }
@@ -148,12 +131,7 @@ public class PunishmentCommand implements SimpleCommand {
                         return;
                     }
                     source.sendMessage(plugin.getMessageProvider().provide("punishment.remove", source, true).color(NamedTextColor.GREEN));
-                    try {
-                        chatListener.update(uuid);
-                    } catch (ExecutionException | InterruptedException | TimeoutException e) {
-                        source.sendMessage(plugin.getMessageProvider().internalError(source, true));
-                        e.printStackTrace();
-                    }
+                    chatListener.update(uuid);
                 });
                 case "info" -> source.sendMessage(new PunishmentHelper().buildPunishmentData(punishment, plugin.getMessageProvider(), source));
                 case "change" -> source.sendMessage(Component.text("Soon (TM)"));
@@ -167,15 +145,10 @@ public class PunishmentCommand implements SimpleCommand {
         if (invocation.arguments().length == 2 && invocation.arguments()[0].equalsIgnoreCase("playerinfo")) {
             return Util.executeAsync(() -> {
                 Set<String> list = new HashSet<>();
-                try (Connection connection = dataSource.getConnection();
-                     PreparedStatement statement = connection.prepareStatement("SELECT name FROM velocity_punishment WHERE name LIKE ?")) {
+                try {
                     String suggestion = invocation.arguments().length == 1 ? "" : invocation.arguments()[1].toLowerCase();
-                    statement.setString(1, suggestion + "%");
-                    ResultSet rs = statement.executeQuery();
-                    while (rs.next()) {
-                        list.add(rs.getString(1));
-                    }
-                } catch (SQLException e) {
+                    list.addAll(storage.findPlayerNames(suggestion));
+                } catch (StorageException e) {
                     e.printStackTrace();
                 }
                 list.addAll(Util.getPlayerNames(server.getAllPlayers()).stream().map(String::toLowerCase).toList());
@@ -196,6 +169,40 @@ public class PunishmentCommand implements SimpleCommand {
         return new ArrayList<>();
     }
 
+    /**
+     * Sends one page of the punishment history of a player, headed by the total amount of punishments. If there are more
+     * punishments, a click on the footer runs this command for the next page.
+     */
+    private void sendPlayerInfo(UUID uuid, String player, String cursor, CommandSource source, PunishmentHelper helper) {
+        final Set<StandardPunishmentType> types = EnumSet.allOf(StandardPunishmentType.class);
+        CompletableFuture<Integer> count = Util.executeAsync(() -> storage.count(uuid, types), service);
+        plugin.getPunishmentManager().getPunishmentHistory(uuid, cursor, HISTORY_PAGE_SIZE, service).thenCombine(count, (page, total) -> {
+            source.sendMessage(plugin.getMessageProvider().provide("command.punishment.punishments", source, true, Component.text(total)).color(NamedTextColor.AQUA));
+            for (Punishment punishment : page.punishments()) {
+                Component component = helper.buildPunishmentData(punishment, plugin.getMessageProvider(), source)
+                        .clickEvent(ClickEvent.suggestCommand(punishment.getPunishmentUuid().toString().toLowerCase(Locale.ROOT)))
+                        .hoverEvent((HoverEventSource<Component>) op -> HoverEvent.showText(plugin.getMessageProvider().provide("commands.general.copy")
+                                .color(NamedTextColor.GREEN)));
+                source.sendMessage(component);
+            }
+            if (page.hasNext()) {
+                source.sendMessage(plugin.getMessageProvider().provide("command.punishment.next-page", source, true).color(NamedTextColor.YELLOW)
+                        .clickEvent(ClickEvent.runCommand("/punishment playerinfo " + player + " " + page.nextCursor())));
+            }
+            return null;
+        }).whenComplete((unused, t) -> {
+            if (t == null) {
+                return;
+            }
+            if (t.getCause() instanceof IllegalArgumentException) {
+                source.sendMessage(plugin.getMessageProvider().provide("command.punishment.usage", source, true).color(NamedTextColor.RED));
+                return;
+            }
+            source.sendMessage(plugin.getMessageProvider().internalError(source, true));
+            t.printStackTrace();
+        });
+    }
+
     @Override
     public boolean hasPermission(Invocation invocation) {
         return invocation.source().hasPermission("punishment.command.punishment");
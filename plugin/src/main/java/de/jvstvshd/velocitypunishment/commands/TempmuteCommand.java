@@ -40,9 +40,7 @@ import net.kyori.adventure.text.format.TextDecoration;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeoutException;
 
 import static de.jvstvshd.velocitypunishment.internal.Util.copyComponent;
 
@@ -98,11 +96,7 @@ public class TempmuteCommand implements SimpleCommand {
                         component,
                         Component.text(until).color(NamedTextColor.GREEN)));
                 source.sendMessage(plugin.getMessageProvider().provide("commands.general.punishment.id", source, true, copyComponent(mute.getPunishmentUuid().toString().toLowerCase(), plugin.getMessageProvider(), source).color(NamedTextColor.YELLOW)));
-                try {
-                    chatListener.update(uuid);
-                } catch (ExecutionException | TimeoutException | InterruptedException e) {
-                    e.printStackTrace();
-                }
+                chatListener.update(uuid);
             });
         }, service);
     }
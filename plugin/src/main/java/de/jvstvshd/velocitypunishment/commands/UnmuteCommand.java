@@ -32,34 +32,29 @@ import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
 import de.jvstvshd.velocitypunishment.internal.PunishmentHelper;
 import de.jvstvshd.velocitypunishment.internal.Util;
 import de.jvstvshd.velocitypunishment.listener.ChatListener;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.event.HoverEvent;
 import net.kyori.adventure.text.event.HoverEventSource;
 import net.kyori.adventure.text.format.NamedTextColor;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeoutException;
 
 public class UnmuteCommand implements SimpleCommand {
 
     private final ExecutorService service;
-    private final DataSource dataSource;
+    private final PunishmentStorage storage;
     private final VelocityPunishmentPlugin plugin;
     private final ChatListener chatListener;
 
     public UnmuteCommand(VelocityPunishmentPlugin plugin, ChatListener chatListener) {
-        this.dataSource = plugin.getDataSource();
+        this.storage = plugin.getStorage();
         this.service = plugin.getService();
         this.plugin = plugin;
         this.chatListener = chatListener;
@@ -108,12 +103,7 @@ public class UnmuteCommand implements SimpleCommand {
                             return;
                         }
                         invocation.source().sendMessage(Component.text("The mute was removed.").color(NamedTextColor.GREEN));
-                        try {
-                            chatListener.update(uuid);
-                        } catch (ExecutionException | InterruptedException | TimeoutException e) {
-                            source.sendMessage(plugin.getMessageProvider().internalError(source, true));
-                            e.printStackTrace();
-                        }
+                        chatListener.update(uuid);
                     });
                 }
             });
@@ -126,14 +116,9 @@ public class UnmuteCommand implements SimpleCommand {
             if (invocation.arguments()[0].length() > 1) {
                 return Util.executeAsync(() -> {
                     List<String> list = new ArrayList<>();
-                    try (Connection connection = dataSource.getConnection();
-                         PreparedStatement statement = connection.prepareStatement("SELECT name FROM velocity_punishment WHERE name LIKE ?")) {
-                        statement.setString(1, invocation.arguments()[0].toLowerCase() + "%");
-                        ResultSet rs = statement.executeQuery();
-                        while (rs.next()) {
-                            list.add(rs.getString(1));
-                        }
-                    } catch (SQLException e) {
+                    try {
+                        list.addAll(storage.findPlayerNames(invocation.arguments()[0].toLowerCase()));
+                    } catch (StorageException e) {
                         e.printStackTrace();
                     }
                     return ImmutableList.copyOf(list);
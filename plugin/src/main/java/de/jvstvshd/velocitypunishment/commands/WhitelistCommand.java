@@ -27,10 +27,11 @@ package de.jvstvshd.velocitypunishment.commands;
 import com.velocitypowered.api.command.SimpleCommand;
 import de.jvstvshd.velocitypunishment.VelocityPunishmentPlugin;
 import de.jvstvshd.velocitypunishment.internal.Util;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
-import java.sql.SQLException;
+import java.util.UUID;
 
 public class WhitelistCommand implements SimpleCommand {
 
@@ -50,14 +51,11 @@ public class WhitelistCommand implements SimpleCommand {
         if (invocation.arguments().length == 1) {
             plugin.getPlayerResolver().getOrQueryPlayerUuid(invocation.arguments()[0], plugin.getService()).whenCompleteAsync((uuid, throwable) -> {
                 if (Util.sendErrorMessageIfErrorOccurred(invocation, source, uuid, throwable, plugin)) return;
-                try (var connection = plugin.getDataSource().getConnection();
-                     var statement = connection.prepareStatement("SELECT * FROM velocity_punishment_whitelist WHERE uuid = ?;")) {
-                    statement.setString(1, Util.trimUuid(uuid));
-                    var rs = statement.executeQuery();
-                    var whitelisted = rs.next() ? plugin.getMessageProvider().provide("whitelist.status.whitelisted", source) :
+                try {
+                    var whitelisted = isWhitelisted(uuid) ? plugin.getMessageProvider().provide("whitelist.status.whitelisted", source) :
                             plugin.getMessageProvider().provide("whitelist.status.disallowed", source);
                     source.sendMessage(plugin.getMessageProvider().provide("command.whitelist.status", source, true, Component.text(invocation.arguments()[0]).color(NamedTextColor.YELLOW), whitelisted.color(NamedTextColor.YELLOW)));
-                } catch (SQLException e) {
+                } catch (StorageException e) {
                     throw new RuntimeException(e);
                 }
             }, plugin.getService());
@@ -68,16 +66,18 @@ public class WhitelistCommand implements SimpleCommand {
             case "add", "remove" ->
                     plugin.getPlayerResolver().getOrQueryPlayerUuid(invocation.arguments()[0], plugin.getService()).whenCompleteAsync((uuid, throwable) -> {
                         if (Util.sendErrorMessageIfErrorOccurred(invocation, source, uuid, throwable, plugin)) return;
-                        try (var connection = plugin.getDataSource().getConnection();
-                             var statement = connection.prepareStatement(option.equals("add") ? "INSERT INTO velocity_punishment_whitelist (uuid) VALUES (?);" :
-                                     "DELETE FROM velocity_punishment_whitelist WHERE uuid = ?;")) {
-                            statement.setString(1, Util.trimUuid(uuid));
-                            statement.executeUpdate();
+                        try {
+                            plugin.getStorage().setWhitelisted(uuid, option.equals("add"));
+                            if (option.equals("add")) {
+                                plugin.getWhitelistCache().add(uuid);
+                            } else {
+                                plugin.getWhitelistCache().remove(uuid);
+                            }
                             source.sendMessage(plugin.getMessageProvider().provide("command.whitelist.success", source, true));
                             if (option.equals("remove")) {
                                 plugin.getServer().getPlayer(uuid).ifPresent(player -> player.disconnect(Component.text("You have been blacklisted.").color(NamedTextColor.DARK_RED)));
                             }
-                        } catch (SQLException e) {
+                        } catch (StorageException e) {
                             e.printStackTrace();
                             source.sendMessage(plugin.getMessageProvider().internalError(source, true));
                         }
@@ -86,6 +86,14 @@ public class WhitelistCommand implements SimpleCommand {
         }
     }
 
+    private boolean isWhitelisted(UUID uuid) throws StorageException {
+        var whitelistCache = plugin.getWhitelistCache();
+        if (whitelistCache.isLoaded()) {
+            return whitelistCache.isWhitelisted(uuid);
+        }
+        return plugin.getStorage().isWhitelisted(uuid);
+    }
+
     @Override
     public boolean hasPermission(Invocation invocation) {
         return invocation.source().hasPermission("punishment.command.whitelist");
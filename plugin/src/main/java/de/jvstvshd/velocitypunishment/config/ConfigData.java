@@ -29,11 +29,28 @@ import java.util.Locale;
 @SuppressWarnings({"FieldMayBeFinal", "FieldCanBeLocal"})
 public class ConfigData {
 
+    private StorageType storageType = StorageType.MARIADB;
     private DataBaseData dataBaseData = new DataBaseData();
     private Locale forcedLanguage = null;
 
     private boolean whitelistActivated = false;
 
+    private boolean preLoginBanCheck = false;
+
+    private int snapshotInterval = 5;
+    private int cacheRefreshInterval = 60;
+    private boolean failOpen = false;
+
+    private int writeBehindBatchSize = 0;
+    private int writeBehindWindow = 50;
+
+    /**
+     * @return the backend punishments and the whitelist are stored in
+     */
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
     public DataBaseData getDataBaseData() {
         return dataBaseData;
     }
@@ -45,4 +62,62 @@ public class ConfigData {
     public boolean isWhitelistActivated() {
         return whitelistActivated;
     }
+
+    /**
+     * Whether permanently banned players should already be rejected in the pre login phase, before the proxy performs
+     * encryption and authentication. The locale of a player is unknown in this phase, so this check only applies if a
+     * {@link #getForcedLanguage() language is forced}. In online mode, names can be changed and reused, so a name only
+     * identifies a banned player after they authenticated with it once; the name is forgotten as soon as another player
+     * authenticates with it. All other players are checked after authentication.
+     *
+     * @return true if the pre login ban check is enabled
+     */
+    public boolean isPreLoginBanCheck() {
+        return preLoginBanCheck;
+    }
+
+    /**
+     * @return the interval in minutes in which a snapshot of all bans and mutes is written to disk, 0 to disable snapshots
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * The interval in which the punishment cache is reloaded from the database. This makes punishments issued or lifted on
+     * other proxies sharing the database effective on this proxy. Only used with {@link StorageType#MARIADB}, the embedded
+     * storages cannot be shared.
+     *
+     * @return the interval in seconds, 0 to disable reloading if only one proxy uses the database
+     */
+    public int getCacheRefreshInterval() {
+        return cacheRefreshInterval;
+    }
+
+    /**
+     * Whether players should be allowed to join and chat if their punishments can neither be retrieved from the database
+     * nor from a snapshot.
+     *
+     * @return true if logins and chat messages should be allowed in this case, false if they should be denied
+     */
+    public boolean isFailOpen() {
+        return failOpen;
+    }
+
+    /**
+     * The maximum amount of punishment inserts and deletes that are written to the database in one transaction. Writes are
+     * applied to the caches immediately and flushed in the background.
+     *
+     * @return the maximum batch size, 0 to write every punishment on its own
+     */
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * @return the time in milliseconds a batch of punishment writes waits for further writes before it is flushed
+     */
+    public int getWriteBehindWindow() {
+        return writeBehindWindow;
+    }
 }
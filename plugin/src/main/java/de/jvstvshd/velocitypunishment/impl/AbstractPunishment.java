@@ -29,10 +29,14 @@ import de.jvstvshd.velocitypunishment.api.message.MessageProvider;
 import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
 import de.jvstvshd.velocitypunishment.api.punishment.PunishmentManager;
 import de.jvstvshd.velocitypunishment.api.punishment.util.PlayerResolver;
+import de.jvstvshd.velocitypunishment.cache.CleanRecordCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentIdCache;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 
-import javax.sql.DataSource;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
@@ -40,47 +44,35 @@ import java.util.concurrent.ExecutorService;
 
 public abstract class AbstractPunishment implements Punishment {
 
-    private final Component reason;
-    private final DataSource dataSource;
-    private final ExecutorService service;
-    private final UUID playerUuid;
-    private final UUID punishmentUuid;
-    private final PunishmentManager punishmentManager;
-    private final PlayerResolver playerResolver;
-    private final MessageProvider messageProvider;
-
-    protected final static String APPLY_PUNISHMENT = "INSERT INTO velocity_punishment" +
-            " (uuid, name, type, expiration, reason, punishment_id) VALUES (?, ?, ?, ?, ?, ?)";
-    protected final static String APPLY_ANNUL = "DELETE FROM velocity_punishment WHERE punishment_id = ?";
-    protected final static String APPLY_CHANGE = "UPDATE velocity_punishment SET reason = ?, expiration = ?, permanent = ? WHERE punishment_id = ?";
+    private final PunishmentData data;
+    private final PunishmentContext context;
+
     private boolean validity;
 
-    public AbstractPunishment(UUID playerUuid, Component reason, DataSource dataSource, PlayerResolver playerResolver, PunishmentManager punishmentManager, ExecutorService service, MessageProvider messageProvider) {
-        this(playerUuid, reason, dataSource, service, punishmentManager, UUID.randomUUID(), playerResolver, messageProvider);
+    public AbstractPunishment(PunishmentData data, PunishmentContext context) {
+        this.data = data;
+        this.context = context;
+        this.validity = true;
     }
 
-    public AbstractPunishment(UUID playerUuid, Component reason, DataSource dataSource, ExecutorService service, PunishmentManager punishmentManager, UUID punishmentUuid, PlayerResolver playerResolver, MessageProvider messageProvider) {
-        this.reason = reason;
-        this.dataSource = dataSource;
-        this.service = service;
-        this.playerUuid = playerUuid;
-        this.punishmentManager = punishmentManager;
-        this.punishmentUuid = punishmentUuid;
-        this.playerResolver = playerResolver;
-        this.validity = true;
-        this.messageProvider = messageProvider;
+    public PunishmentData getData() {
+        return data;
+    }
+
+    public PunishmentContext getContext() {
+        return context;
     }
 
-    public DataSource getDataSource() {
-        return dataSource;
+    public PunishmentStorage getStorage() {
+        return context.storage();
     }
 
     public Component getReason() {
-        return reason;
+        return data.reason().component();
     }
 
     public ExecutorService getService() {
-        return service;
+        return context.service();
     }
 
     protected <T> CompletableFuture<T> executeAsync(Callable<T> task, ExecutorService executorService) {
@@ -96,21 +88,28 @@ public abstract class AbstractPunishment implements Punishment {
     }
 
     public UUID getPlayerUuid() {
-        return playerUuid;
+        return data.playerUuid();
     }
 
     public PunishmentManager getPunishmentManager() {
-        return punishmentManager;
+        return context.punishmentManager();
     }
 
     public UUID getPunishmentUuid() {
-        return punishmentUuid;
+        return data.punishmentUuid();
     }
 
     protected String convertReason(Component component) {
         return LegacyComponentSerializer.legacy(LegacyComponentSerializer.SECTION_CHAR).serialize(component);
     }
 
+    /**
+     * @return the reason of this punishment in its legacy text form, without deserializing it
+     */
+    protected String getLegacyReason() {
+        return data.reason().legacy();
+    }
+
     public boolean isValid() {
         return validity;
     }
@@ -118,12 +117,8 @@ public abstract class AbstractPunishment implements Punishment {
     @Override
     public String toString() {
         return "AbstractPunishment{" +
-                "reason=" + reason +
-                ", dataSource=" + dataSource +
-                ", service=" + service +
-                ", playerUuid=" + playerUuid +
-                ", punishmentUuid=" + punishmentUuid +
-                ", punishmentManager=" + punishmentManager +
+                "data=" + data +
+                ", validity=" + validity +
                 '}';
     }
 
@@ -138,10 +133,46 @@ public abstract class AbstractPunishment implements Punishment {
     }
 
     public PlayerResolver getPlayerResolver() {
-        return playerResolver;
+        return context.playerResolver();
     }
 
     public MessageProvider getMessageProvider() {
-        return messageProvider;
+        return context.messageProvider();
+    }
+
+    /**
+     * @return the {@link PunishmentCache} of the punishment manager, if it is a {@link DefaultPunishmentManager}
+     */
+    protected Optional<PunishmentCache> getCache() {
+        return getDefaultPunishmentManager().map(DefaultPunishmentManager::getCache);
+    }
+
+    /**
+     * @return the {@link CleanRecordCache} of the punishment manager, if it is a {@link DefaultPunishmentManager}
+     */
+    protected Optional<CleanRecordCache> getCleanRecordCache() {
+        return getDefaultPunishmentManager().map(DefaultPunishmentManager::getCleanRecordCache);
+    }
+
+    /**
+     * @return the {@link PunishmentIdCache} of the punishment manager, if it is a {@link DefaultPunishmentManager}
+     */
+    protected Optional<PunishmentIdCache> getIdCache() {
+        return getDefaultPunishmentManager().map(DefaultPunishmentManager::getIdCache);
+    }
+
+    /**
+     * @return the {@link WriteBehindQueue} of the punishment manager, if it is a {@link DefaultPunishmentManager} and
+     * write-behind is enabled
+     */
+    protected Optional<WriteBehindQueue> getWriteBehindQueue() {
+        return getDefaultPunishmentManager().flatMap(DefaultPunishmentManager::getWriteBehindQueue);
+    }
+
+    private Optional<DefaultPunishmentManager> getDefaultPunishmentManager() {
+        if (getPunishmentManager() instanceof DefaultPunishmentManager defaultPunishmentManager) {
+            return Optional.of(defaultPunishmentManager);
+        }
+        return Optional.empty();
     }
 }
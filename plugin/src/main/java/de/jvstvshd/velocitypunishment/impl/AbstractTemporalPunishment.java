@@ -24,45 +24,117 @@
 
 package de.jvstvshd.velocitypunishment.impl;
 
-import de.jvstvshd.velocitypunishment.api.message.MessageProvider;
+import com.velocitypowered.api.command.CommandSource;
+import de.jvstvshd.velocitypunishment.api.punishment.Ban;
 import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
 import de.jvstvshd.velocitypunishment.api.punishment.PunishmentDuration;
-import de.jvstvshd.velocitypunishment.api.punishment.PunishmentManager;
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
 import de.jvstvshd.velocitypunishment.api.punishment.TemporalPunishment;
-import de.jvstvshd.velocitypunishment.api.punishment.util.PlayerResolver;
-import de.jvstvshd.velocitypunishment.internal.Util;
+import de.jvstvshd.velocitypunishment.message.ResourceBundleMessageProvider;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
+import de.jvstvshd.velocitypunishment.storage.StoredPunishment;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.Timestamp;
-import java.util.UUID;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public abstract class AbstractTemporalPunishment extends AbstractPunishment implements TemporalPunishment {
 
-    private final PunishmentDuration duration;
+    private static final DateTimeFormatter END_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    public AbstractTemporalPunishment(UUID playerUuid, Component reason, DataSource dataSource, PlayerResolver playerResolver, PunishmentManager punishmentManager, ExecutorService service, PunishmentDuration duration, MessageProvider messageProvider) {
-        super(playerUuid, reason, dataSource, playerResolver, punishmentManager, service, messageProvider);
-        this.duration = duration;
-    }
+    private volatile Map<Locale, RenderedReason> renderedReasons;
 
-    public AbstractTemporalPunishment(UUID playerUuid, Component reason, DataSource dataSource, ExecutorService service, PunishmentManager punishmentManager, UUID punishmentUuid, PlayerResolver playerResolver, PunishmentDuration duration, MessageProvider messageProvider) {
-        super(playerUuid, reason, dataSource, service, punishmentManager, punishmentUuid, playerResolver, messageProvider);
-        this.duration = duration;
+    public AbstractTemporalPunishment(PunishmentData data, PunishmentContext context) {
+        super(data, context);
     }
 
     public PunishmentDuration getDuration() {
-        return duration;
+        return getData().duration();
+    }
+
+    @Override
+    public abstract StandardPunishmentType getType();
+
+    /**
+     * Writes this punishment to the storage and adds it to the caches. If write-behind is enabled, the caches are updated
+     * right away and the returned future is completed once the queued insert was flushed; the punishment is removed from
+     * the caches again if the insert failed.
+     *
+     * @param name the (lower case) name of the punished player
+     * @return a {@link CompletableFuture} being completed with this punishment once it was written
+     * @throws StorageException if the punishment could not be written directly
+     */
+    protected CompletableFuture<Punishment> store(String name) throws StorageException {
+        final StoredPunishment stored = new StoredPunishment(getPunishmentUuid(), getPlayerUuid(), name, getType(),
+                getDuration().expirationMillis(), getLegacyReason());
+        Optional<WriteBehindQueue> queue = getWriteBehindQueue();
+        if (queue.isPresent()) {
+            CompletableFuture<Void> written = queue.get().insert(stored);
+            addToCaches(name);
+            return written.handle((unused, throwable) -> {
+                if (throwable != null) {
+                    removeFromCaches();
+                    throw new CompletionException(throwable);
+                }
+                return this;
+            });
+        }
+        getStorage().insert(stored);
+        addToCaches(name);
+        return CompletableFuture.completedFuture(this);
+    }
+
+    /**
+     * Deletes this punishment from the storage and removes it from the caches. If write-behind is enabled, the caches are
+     * updated right away and the returned future is completed once the queued delete was flushed; the punishment is added
+     * to the caches again if the delete failed.
+     *
+     * @return a {@link CompletableFuture} being completed with this punishment once it was deleted
+     * @throws StorageException if the punishment could not be deleted directly
+     */
+    protected CompletableFuture<Punishment> annul() throws StorageException {
+        Optional<WriteBehindQueue> queue = getWriteBehindQueue();
+        if (queue.isPresent()) {
+            CompletableFuture<Void> written = queue.get().delete(getPunishmentUuid());
+            removeFromCaches();
+            return written.handle((unused, throwable) -> {
+                if (throwable != null) {
+                    getCache().ifPresent(cache -> cache.add(getPlayerUuid(), this));
+                    throw new CompletionException(throwable);
+                }
+                return this;
+            });
+        }
+        getStorage().delete(getPunishmentUuid());
+        removeFromCaches();
+        return CompletableFuture.completedFuture(this);
+    }
+
+    private void addToCaches(String name) {
+        getCache().ifPresent(cache -> {
+            cache.add(getPlayerUuid(), this);
+            cache.putPlayerName(name, getPlayerUuid());
+        });
+        getCleanRecordCache().ifPresent(cache -> cache.invalidate(getPlayerUuid()));
+        getIdCache().ifPresent(cache -> cache.put(this));
+    }
+
+    private void removeFromCaches() {
+        getCache().ifPresent(cache -> cache.remove(getPlayerUuid(), getPunishmentUuid()));
+        getIdCache().ifPresent(cache -> cache.invalidate(getPunishmentUuid()));
     }
 
     @Override
     public String toString() {
         return "AbstractTemporalPunishment{" +
-                "duration=" + duration +
+                "duration=" + getDuration() +
                 "} " + super.toString();
     }
 
@@ -78,18 +150,87 @@ public abstract class AbstractTemporalPunishment extends AbstractPunishment impl
         }
     }
 
+    /**
+     * Creates the full reason using the given translation keys. The rendered component is cached per locale and only
+     * rendered again once the remaining duration, which is displayed with a precision of seconds, has changed.
+     *
+     * @param source       the source the reason is created for
+     * @param permanentKey the translation key used if this punishment is permanent
+     * @param temporalKey  the translation key used if this punishment is temporal
+     * @return the full reason
+     */
+    protected Component renderFullReason(CommandSource source, String permanentKey, String temporalKey) {
+        if (!(getMessageProvider() instanceof ResourceBundleMessageProvider messageProvider)) {
+            return doRenderFullReason(source, permanentKey, temporalKey);
+        }
+        final Locale locale = messageProvider.getLocaleProvider().provideLocale(source);
+        final PunishmentDuration duration = getDuration();
+        final long remainingSeconds = duration.isPermanent() ? 0 : (duration.expirationMillis() - System.currentTimeMillis()) / 1000;
+        Map<Locale, RenderedReason> renderedReasons = this.renderedReasons;
+        if (renderedReasons == null) {
+            renderedReasons = this.renderedReasons = new ConcurrentHashMap<>(2);
+        }
+        RenderedReason cached = renderedReasons.get(locale);
+        if (cached != null && cached.remainingSeconds() == remainingSeconds) {
+            return cached.component();
+        }
+        Component rendered = doRenderFullReason(source, permanentKey, temporalKey);
+        renderedReasons.put(locale, new RenderedReason(remainingSeconds, rendered));
+        return rendered;
+    }
+
+    private Component doRenderFullReason(CommandSource source, String permanentKey, String temporalKey) {
+        final PunishmentDuration duration = getDuration();
+        if (duration.isPermanent()) {
+            return getMessageProvider().provide(permanentKey, source, true, getReason());
+        }
+        var until = Component.text(duration.expiration().format(END_FORMATTER)).color(NamedTextColor.YELLOW);
+        return getMessageProvider().provide(temporalKey, source, true, Component.text(duration.getRemainingDuration()).color(NamedTextColor.YELLOW), getReason(), until);
+    }
+
+    /**
+     * Changes duration and reason of this punishment. The new duration is made absolute, so it starts now. If write-behind
+     * is enabled, the update is queued behind a pending insert of this punishment, the caches are updated right away and
+     * this punishment is put back into the caches if the update failed.
+     */
     @Override
     public CompletableFuture<Punishment> change(PunishmentDuration newDuration, Component newReason) {
+        newDuration.absolute();
         return executeAsync(() -> {
-            try (Connection connection = getDataSource().getConnection();
-                 PreparedStatement statement = connection.prepareStatement(APPLY_CHANGE)) {
-                statement.setString(1, convertReason(newReason));
-                statement.setTimestamp(2, Timestamp.valueOf(newDuration.expiration()));
-                statement.setBoolean(3, newDuration.isPermanent());
-                statement.setString(4, Util.trimUuid(getPunishmentUuid()));
-                statement.executeUpdate();
+            final StandardPunishmentType type = changedType(newDuration);
+            final String reason = convertReason(newReason);
+            final PunishmentData data = new PunishmentData(getPlayerUuid(), getPunishmentUuid(), PunishmentReason.of(newReason), newDuration);
+            final AbstractTemporalPunishment changed = this instanceof Ban ? new DefaultBan(data, getContext()) : new DefaultMute(data, getContext());
+            Optional<WriteBehindQueue> queue = getWriteBehindQueue();
+            if (queue.isPresent()) {
+                CompletableFuture<Void> written = queue.get().update(getPunishmentUuid(), type, newDuration.expirationMillis(), reason);
+                replaceInCaches(changed);
+                return written.handle((unused, throwable) -> {
+                    if (throwable != null) {
+                        replaceInCaches(this);
+                        throw new CompletionException(throwable);
+                    }
+                    return (Punishment) changed;
+                });
             }
-            return new DefaultMute(getPlayerUuid(), newReason, getDataSource(), getPlayerResolver(), getPunishmentManager(), getService(), newDuration, getMessageProvider());
-        }, getService());
+            getStorage().update(getPunishmentUuid(), type, newDuration.expirationMillis(), reason);
+            replaceInCaches(changed);
+            return CompletableFuture.<Punishment>completedFuture(changed);
+        }, getService()).thenCompose(Function.identity());
+    }
+
+    private void replaceInCaches(AbstractTemporalPunishment punishment) {
+        getCache().ifPresent(cache -> cache.add(getPlayerUuid(), punishment));
+        getIdCache().ifPresent(cache -> cache.invalidate(getPunishmentUuid()));
+    }
+
+    private StandardPunishmentType changedType(PunishmentDuration newDuration) {
+        if (this instanceof Ban) {
+            return newDuration.isPermanent() ? StandardPunishmentType.PERMANENT_BAN : StandardPunishmentType.BAN;
+        }
+        return newDuration.isPermanent() ? StandardPunishmentType.PERMANENT_MUTE : StandardPunishmentType.MUTE;
+    }
+
+    private record RenderedReason(long remainingSeconds, Component component) {
     }
 }
@@ -25,33 +25,21 @@
 package de.jvstvshd.velocitypunishment.impl;
 
 import com.velocitypowered.api.command.CommandSource;
-import de.jvstvshd.velocitypunishment.api.message.MessageProvider;
 import de.jvstvshd.velocitypunishment.api.punishment.*;
-import de.jvstvshd.velocitypunishment.api.punishment.util.PlayerResolver;
-import de.jvstvshd.velocitypunishment.internal.Util;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class DefaultMute extends AbstractTemporalPunishment implements Mute {
 
-    public DefaultMute(UUID playerUuid, Component reason, DataSource dataSource, PlayerResolver playerResolver, PunishmentManager punishmentManager, ExecutorService service, PunishmentDuration duration, MessageProvider messageProvider) {
-        super(playerUuid, reason, dataSource, playerResolver, punishmentManager, service, duration, messageProvider);
-    }
-
-    public DefaultMute(UUID playerUuid, Component reason, DataSource dataSource, ExecutorService service, PunishmentManager punishmentManager, UUID punishmentUuid, PlayerResolver playerResolver, PunishmentDuration duration, MessageProvider messageProvider) {
-        super(playerUuid, reason, dataSource, service, punishmentManager, punishmentUuid, playerResolver, duration, messageProvider);
+    public DefaultMute(PunishmentData data, PunishmentContext context) {
+        super(data, context);
     }
 
     @Override
@@ -64,35 +52,19 @@ public class DefaultMute extends AbstractTemporalPunishment implements Mute {
         checkValidity();
         getDuration().absolute();
         return executeAsync(() -> {
-            try (Connection connection = getDataSource().getConnection();
-                 PreparedStatement statement = connection.prepareStatement(APPLY_PUNISHMENT)) {
-                statement.setString(1, Util.trimUuid(getPlayerUuid()));
-                statement.setString(2, getPlayerResolver().getOrQueryPlayerName(getPlayerUuid(),
-                        Executors.newSingleThreadExecutor()).get(5, TimeUnit.SECONDS).toLowerCase());
-                statement.setString(3, getType().getName());
-                statement.setTimestamp(4, getDuration().timestampExpiration());
-                statement.setString(5, convertReason(getReason()));
-                statement.setString(6, Util.trimUuid(getPunishmentUuid()));
-                statement.executeUpdate();
-                return this;
-            }
-        }, getService());
+            final String name = getPlayerResolver().getOrQueryPlayerName(getPlayerUuid(),
+                    Executors.newSingleThreadExecutor()).get(5, TimeUnit.SECONDS).toLowerCase();
+            return store(name);
+        }, getService()).thenCompose(Function.identity());
     }
 
     @Override
     public CompletableFuture<Punishment> cancel() {
-        return executeAsync(() -> {
-            try (Connection connection = getDataSource().getConnection();
-                 PreparedStatement statement = connection.prepareStatement(APPLY_ANNUL)) {
-                statement.setString(1, Util.trimUuid(getPunishmentUuid()));
-                statement.executeUpdate();
-                return this;
-            }
-        }, getService());
+        return executeAsync(this::annul, getService()).thenCompose(Function.identity());
     }
 
     @Override
-    public PunishmentType getType() {
+    public StandardPunishmentType getType() {
         return isPermanent() ? StandardPunishmentType.PERMANENT_MUTE : StandardPunishmentType.MUTE;
     }
 
@@ -107,12 +79,6 @@ public class DefaultMute extends AbstractTemporalPunishment implements Mute {
         if (!isValid()) {
             return Component.text("INVALID").decorate(TextDecoration.BOLD).color(NamedTextColor.DARK_RED);
         }
-        if (isPermanent()) {
-            return getMessageProvider().provide("punishment.mute.permanent.full-reason", source, true, getReason());
-        } else {
-            var until = Component.text(getDuration().expiration().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-                    .color(NamedTextColor.YELLOW);
-            return getMessageProvider().provide("punishment.mute.temp.full-reason", source, true, Component.text(getDuration().getRemainingDuration()).color(NamedTextColor.YELLOW), getReason(), until);
-        }
+        return renderFullReason(source, "punishment.mute.permanent.full-reason", "punishment.mute.temp.full-reason");
     }
 }
@@ -26,115 +26,237 @@ package de.jvstvshd.velocitypunishment.impl;
 
 import com.google.common.collect.ImmutableList;
 import com.velocitypowered.api.proxy.ProxyServer;
-import com.zaxxer.hikari.HikariDataSource;
 import de.jvstvshd.velocitypunishment.VelocityPunishmentPlugin;
 import de.jvstvshd.velocitypunishment.api.punishment.*;
+import de.jvstvshd.velocitypunishment.cache.CleanRecordCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentIdCache;
+import de.jvstvshd.velocitypunishment.cache.PunishmentSnapshot;
+import de.jvstvshd.velocitypunishment.internal.RequestCoalescer;
 import de.jvstvshd.velocitypunishment.internal.Util;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
+import de.jvstvshd.velocitypunishment.storage.StoredPunishment;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 
-import java.sql.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.jvstvshd.velocitypunishment.internal.Util.executeAsync;
 
 public class DefaultPunishmentManager implements PunishmentManager {
 
     private final ProxyServer proxyServer;
-    private final HikariDataSource dataSource;
+    private final PunishmentStorage storage;
     private final ExecutorService service = Executors.newCachedThreadPool();
     private final VelocityPunishmentPlugin plugin;
+    private final PunishmentCache cache;
+    private final CleanRecordCache cleanRecordCache;
+    private final PunishmentIdCache idCache;
+    private final RequestCoalescer<PunishmentLookup, List<Punishment>> lookups = new RequestCoalescer<>();
+    private volatile PunishmentContext context;
 
-    private static final String QUERY_PUNISHMENT_WITH_ID = "SELECT uuid, name, type, expiration, reason FROM velocity_punishment WHERE punishment_id = ?";
-    private static final String SELECT_PUNISHMENT_WITH_TYPE = "SELECT expiration, reason, punishment_id FROM velocity_punishment WHERE uuid = ? AND type = ?";
+    private static final Set<StandardPunishmentType> BAN_AND_MUTE_TYPES = EnumSet.of(StandardPunishmentType.BAN, StandardPunishmentType.PERMANENT_BAN,
+            StandardPunishmentType.MUTE, StandardPunishmentType.PERMANENT_MUTE);
 
-    public DefaultPunishmentManager(ProxyServer proxyServer, HikariDataSource dataSource, VelocityPunishmentPlugin plugin) {
+    private static final Set<StandardPunishmentType> BAN_TYPES = EnumSet.of(StandardPunishmentType.BAN, StandardPunishmentType.PERMANENT_BAN);
+
+    public DefaultPunishmentManager(ProxyServer proxyServer, PunishmentStorage storage, VelocityPunishmentPlugin plugin) {
         this.proxyServer = proxyServer;
-        this.dataSource = dataSource;
+        this.storage = storage;
         this.plugin = plugin;
+        this.cache = plugin.getPunishmentCache();
+        this.cleanRecordCache = plugin.getCleanRecordCache();
+        this.idCache = plugin.getPunishmentIdCache();
+    }
+
+    /**
+     * @return the context shared by all punishments of this manager. It is created again if the player resolver or the message
+     * provider of the plugin was replaced.
+     */
+    public PunishmentContext getContext() {
+        PunishmentContext current = context;
+        if (current == null || current.playerResolver() != plugin.getPlayerResolver() || current.messageProvider() != plugin.getMessageProvider()) {
+            current = context = new PunishmentContext(storage, service, this, plugin.getPlayerResolver(), plugin.getMessageProvider());
+        }
+        return current;
     }
 
     @Override
     public Ban createBan(UUID player, Component reason, PunishmentDuration duration) {
-        return new DefaultBan(player, reason, dataSource, plugin.getPlayerResolver(), this, service, duration, plugin.getMessageProvider());
+        return new DefaultBan(new PunishmentData(player, UUID.randomUUID(), PunishmentReason.of(reason), duration), getContext());
     }
 
     @Override
     public Mute createMute(UUID player, Component reason, PunishmentDuration duration) {
-        return new DefaultMute(player, reason, dataSource, plugin.getPlayerResolver(), this, service, duration, plugin.getMessageProvider());
+        return new DefaultMute(new PunishmentData(player, UUID.randomUUID(), PunishmentReason.of(reason), duration), getContext());
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public CompletableFuture<List<Punishment>> getPunishments(UUID player, Executor service, PunishmentType... types) {
-        return executeAsync(() -> {
-            List<StandardPunishmentType> typeList = types.length == 0 ? Arrays.stream(StandardPunishmentType.values()).toList() : getTypes(types);
+        final List<StandardPunishmentType> typeList;
+        try {
+            typeList = types.length == 0 ? Arrays.stream(StandardPunishmentType.values()).toList() : getTypes(types);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (typeList.isEmpty()) {
+            return CompletableFuture.completedFuture(ImmutableList.of());
+        }
+        final EnumSet<StandardPunishmentType> typeSet = EnumSet.copyOf(typeList);
+        if (BAN_AND_MUTE_TYPES.containsAll(typeSet) && cleanRecordCache.isClean(player)) {
+            return CompletableFuture.completedFuture(ImmutableList.of());
+        }
+        return lookups.execute(new PunishmentLookup(player, typeList), () -> executeAsync(() -> {
+            final long stamp = cleanRecordCache.stamp();
+            final Map<StandardPunishmentType, List<Punishment>> byType = new EnumMap<>(StandardPunishmentType.class);
+            for (StoredPunishment stored : storage.find(List.of(player), typeSet)) {
+                byType.computeIfAbsent(stored.type(), key -> new ArrayList<>()).add(toPunishment(stored));
+            }
             List<Punishment> punishments = new ArrayList<>();
-            for (StandardPunishmentType standardPunishmentType : typeList) {
-                try (Connection connection = dataSource.getConnection();
-                     PreparedStatement statement = connection.prepareStatement(SELECT_PUNISHMENT_WITH_TYPE)) {
-                    statement.setString(1, Util.trimUuid(player));
-                    statement.setString(2, standardPunishmentType.getName());
-                    punishments.addAll(getPunishments(statement.executeQuery(), standardPunishmentType, player));
-                }
+            for (StandardPunishmentType type : typeList) {
+                punishments.addAll(byType.getOrDefault(type, ImmutableList.of()));
+            }
+            if (typeSet.containsAll(BAN_AND_MUTE_TYPES) && punishments.stream().noneMatch(punishment -> punishment instanceof TemporalPunishment)) {
+                cleanRecordCache.markClean(player, stamp);
             }
             return ImmutableList.copyOf(punishments);
+        }, service));
+    }
+
+    /**
+     * Queries the punishments of multiple players. Players whose punishments are known from the {@link PunishmentCache}
+     * or the {@link CleanRecordCache} are served from memory, all others are queried from the storage at once.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Punishment> CompletableFuture<Map<UUID, List<T>>> getPunishments(Collection<UUID> players, Executor service, PunishmentType... types) {
+        final List<StandardPunishmentType> typeList;
+        try {
+            typeList = types.length == 0 ? Arrays.stream(StandardPunishmentType.values()).toList() : getTypes(types);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final Map<UUID, List<Punishment>> result = new HashMap<>();
+        if (typeList.isEmpty()) {
+            players.forEach(player -> result.put(player, ImmutableList.of()));
+            return CompletableFuture.completedFuture((Map<UUID, List<T>>) (Map<UUID, ?>) result);
+        }
+        final EnumSet<StandardPunishmentType> typeSet = EnumSet.copyOf(typeList);
+        final boolean banAndMuteOnly = BAN_AND_MUTE_TYPES.containsAll(typeSet);
+        final List<UUID> remaining = new ArrayList<>();
+        for (UUID player : new LinkedHashSet<>(players)) {
+            if (banAndMuteOnly && cache.isLoaded()) {
+                result.put(player, getCachedPunishments(player, typeSet));
+            } else if (banAndMuteOnly && cleanRecordCache.isClean(player)) {
+                result.put(player, ImmutableList.of());
+            } else {
+                remaining.add(player);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return CompletableFuture.completedFuture((Map<UUID, List<T>>) (Map<UUID, ?>) result);
+        }
+        return executeAsync(() -> {
+            final long stamp = cleanRecordCache.stamp();
+            final Map<UUID, List<Punishment>> queried = new HashMap<>();
+            for (StoredPunishment stored : storage.find(remaining, typeSet)) {
+                queried.computeIfAbsent(stored.player(), key -> new ArrayList<>()).add(toPunishment(stored));
+            }
+            final boolean clean = typeSet.containsAll(BAN_AND_MUTE_TYPES);
+            for (UUID player : remaining) {
+                List<Punishment> punishments = queried.getOrDefault(player, ImmutableList.of());
+                if (clean && punishments.stream().noneMatch(punishment -> punishment instanceof TemporalPunishment)) {
+                    cleanRecordCache.markClean(player, stamp);
+                }
+                result.put(player, ImmutableList.copyOf(punishments));
+            }
+            return (Map<UUID, List<T>>) (Map<UUID, ?>) result;
         }, service);
     }
 
-    private List<Punishment> getPunishments(ResultSet resultSet, StandardPunishmentType type, UUID uuid) {
+    /**
+     * Queries one page of the punishment history using keyset pagination over {@code (expiration, punishment_id)}. The cursor
+     * encodes the last row of the previous page, so the storage can continue right after it without scanning skipped rows.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Punishment> CompletableFuture<PunishmentPage<T>> getPunishmentHistory(UUID player, String cursor, int pageSize, Executor service, PunishmentType... types) {
+        final List<StandardPunishmentType> typeList;
+        final HistoryCursor after;
         try {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("page size must be positive: " + pageSize);
+            }
+            typeList = types.length == 0 ? Arrays.stream(StandardPunishmentType.values()).toList() : getTypes(types);
+            after = cursor == null ? null : HistoryCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (typeList.isEmpty()) {
+            return CompletableFuture.completedFuture(new PunishmentPage<>(ImmutableList.of(), null));
+        }
+        final EnumSet<StandardPunishmentType> typeSet = EnumSet.copyOf(typeList);
+        return executeAsync(() -> {
             List<Punishment> punishments = new ArrayList<>();
-            while (resultSet.next()) {
-                final Timestamp timestamp = resultSet.getTimestamp(1);
-                final PunishmentDuration duration = PunishmentDuration.fromTimestamp(timestamp);
-                final Component reason = LegacyComponentSerializer.legacySection().deserialize(resultSet.getString(2));
-                final UUID punishmentUuid = Util.parseUuid(resultSet.getString(3));
-                Punishment punishment;
-                switch (type) {
-                    case BAN, PERMANENT_BAN -> punishment = new DefaultBan(uuid, reason, dataSource, service, this, punishmentUuid, plugin.getPlayerResolver(), duration, plugin.getMessageProvider());
-                    case MUTE, PERMANENT_MUTE -> punishment = new DefaultMute(uuid, reason, dataSource, service, this, punishmentUuid, plugin.getPlayerResolver(), duration, plugin.getMessageProvider());
-                    case KICK -> punishment = new DefaultKick(uuid, reason, dataSource, service, this, punishmentUuid, plugin.getPlayerResolver(), plugin.getMessageProvider());
-                    default -> throw new UnsupportedOperationException("unhandled punishment type: " + type.getName());
+            HistoryCursor last = null;
+            boolean hasNext = false;
+            for (StoredPunishment stored : storage.findPage(player, typeSet, after == null ? 0 : after.expiration(),
+                    after == null ? null : after.punishmentId(), pageSize + 1)) {
+                if (punishments.size() == pageSize) {
+                    hasNext = true;
+                    break;
                 }
+                punishments.add(toPunishment(stored));
+                last = new HistoryCursor(stored.expiration(), stored.punishmentId());
+            }
+            return new PunishmentPage<>((List<T>) ImmutableList.copyOf(punishments), hasNext ? last.encode() : null);
+        }, service);
+    }
+
+    private List<Punishment> getCachedPunishments(UUID player, Set<StandardPunishmentType> types) {
+        List<Punishment> punishments = new ArrayList<>();
+        for (TemporalPunishment punishment : cache.getPunishments(player)) {
+            if (types.contains(cachedType(punishment))) {
                 punishments.add(punishment);
             }
-            return punishments;
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return ImmutableList.of();
+        return ImmutableList.copyOf(punishments);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T extends Punishment> T getPunishment(ResultSet resultSet, StandardPunishmentType type, UUID punishmentUuid, int uuidIndex,
-                                                   int timestampIndex, int reasonIndex) throws SQLException {
-        final UUID uuid = Util.parseUuid(resultSet.getString(uuidIndex));
-        PunishmentDuration duration = null;
-        if (timestampIndex != -1) {
-            final Timestamp timestamp = resultSet.getTimestamp(timestampIndex);
-            duration = PunishmentDuration.fromTimestamp(timestamp);
-        }
-        final Component reason = LegacyComponentSerializer.legacySection().deserialize(resultSet.getString(reasonIndex));
-        return (T) switch (type) {
-            case BAN, PERMANENT_BAN -> new DefaultBan(uuid, reason, dataSource, service, this, punishmentUuid, plugin.getPlayerResolver(), duration, plugin.getMessageProvider());
-            case MUTE, PERMANENT_MUTE -> new DefaultMute(uuid, reason, dataSource, service, this, punishmentUuid, plugin.getPlayerResolver(), duration, plugin.getMessageProvider());
-            case KICK -> new DefaultKick(uuid, reason, dataSource, service, this, punishmentUuid, plugin.getPlayerResolver(), plugin.getMessageProvider());
-        };
+    /**
+     * Determines the type of a cached punishment without {@link TemporalPunishment#getType()}, which throws for punishments
+     * that expired but were not evicted yet.
+     */
+    private static StandardPunishmentType cachedType(TemporalPunishment punishment) {
+        final boolean permanent = punishment.getDuration().isPermanent();
+        return punishment instanceof Ban ?
+                (permanent ? StandardPunishmentType.PERMANENT_BAN : StandardPunishmentType.BAN) :
+                (permanent ? StandardPunishmentType.PERMANENT_MUTE : StandardPunishmentType.MUTE);
     }
 
-    @SuppressWarnings("SameParameterValue")
-    private <T extends Punishment> T getPunishment(ResultSet resultSet, UUID punishmentId, int uuidIndex, int timestampIndex, int reasonIndex,
-                                                   int typeIndex) throws SQLException {
-        return getPunishment(resultSet, StandardPunishmentType.valueOf(resultSet.getString(typeIndex).toUpperCase(Locale.ROOT)),
-                punishmentId, uuidIndex, timestampIndex, reasonIndex);
+    @SuppressWarnings("unchecked")
+    private <T extends Punishment> T toPunishment(StoredPunishment stored) {
+        final PunishmentReason reason = PunishmentReason.fromLegacy(stored.reason());
+        return (T) switch (stored.type()) {
+            case BAN, PERMANENT_BAN -> new DefaultBan(new PunishmentData(stored.player(), stored.punishmentId(), reason,
+                    PunishmentDuration.fromTimestamp(new Timestamp(stored.expiration()))), getContext());
+            case MUTE, PERMANENT_MUTE -> new DefaultMute(new PunishmentData(stored.player(), stored.punishmentId(), reason,
+                    PunishmentDuration.fromTimestamp(new Timestamp(stored.expiration()))), getContext());
+            case KICK -> new DefaultKick(new PunishmentData(stored.player(), stored.punishmentId(), reason, null), getContext());
+        };
     }
 
-
     private List<StandardPunishmentType> getTypes(PunishmentType... types) {
         ArrayList<StandardPunishmentType> vTypes = new ArrayList<>();
         for (PunishmentType punishmentType : types) {
@@ -152,23 +274,238 @@ public class DefaultPunishmentManager implements PunishmentManager {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends Punishment> CompletableFuture<Optional<T>> getPunishment(UUID punishmentId, Executor service) {
+        Optional<Punishment> cached = idCache.get(punishmentId);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture((Optional<T>) cached);
+        }
         return executeAsync(() -> {
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(QUERY_PUNISHMENT_WITH_ID)) {
-                statement.setString(1, Util.trimUuid(punishmentId));
-                ResultSet rs = statement.executeQuery();
-                if (rs.next()) {
-                    return Optional.of(getPunishment(rs, punishmentId, 1, 4, 5, 3));
-                } else {
-                    return Optional.empty();
-                }
+            Optional<StoredPunishment> stored = storage.find(punishmentId);
+            if (stored.isEmpty()) {
+                return Optional.empty();
             }
+            T punishment = toPunishment(stored.get());
+            idCache.put(punishment);
+            return Optional.of(punishment);
         }, service);
     }
 
+    /**
+     * Determines whether the given player may join. If the {@link PunishmentCache} and, if the whitelist is activated, the
+     * whitelist cache are loaded, the verdict is computed without touching the storage. Otherwise, the whitelist membership
+     * and all bans and mutes are queried at once from the storage.
+     *
+     * @param player   the uuid of the player
+     * @param executor an {@link Executor} used for async operations
+     * @return a {@link CompletableFuture} being completed with the verdict for this player
+     */
+    public CompletableFuture<LoginVerdict> getLoginVerdict(UUID player, Executor executor) {
+        final boolean whitelistActive = plugin.whitelistActive();
+        final var whitelistCache = plugin.getWhitelistCache();
+        if (cache.isLoaded() && (!whitelistActive || whitelistCache.isLoaded())) {
+            return CompletableFuture.completedFuture(LoginVerdict.of(!whitelistActive || whitelistCache.isWhitelisted(player), cache.getPunishments(player)));
+        }
+        if (cleanRecordCache.isClean(player) && (!whitelistActive || whitelistCache.isLoaded())) {
+            return CompletableFuture.completedFuture(new LoginVerdict(!whitelistActive || whitelistCache.isWhitelisted(player), null, null));
+        }
+        return executeAsync(() -> {
+            final long stamp = cleanRecordCache.stamp();
+            boolean whitelisted = !whitelistActive;
+            List<Punishment> punishments = new ArrayList<>();
+            PunishmentStorage.LoginData data = storage.findLoginData(player, BAN_AND_MUTE_TYPES);
+            whitelisted |= data.whitelisted();
+            for (StoredPunishment stored : data.punishments()) {
+                punishments.add(toPunishment(stored));
+            }
+            if (punishments.isEmpty()) {
+                cleanRecordCache.markClean(player, stamp);
+            }
+            return LoginVerdict.of(whitelisted, punishments);
+        }, executor);
+    }
+
+    /**
+     * Loads all unexpired bans and mutes into the {@link PunishmentCache}. The punishments are split into partitions by the
+     * upper four bits of the player uuid, which are loaded in parallel as far as the storage supports it.
+     * The cache is marked as loaded once all partitions were read. If the cache is already loaded, its content is reconciled
+     * with the storage; punishments added or removed on this proxy while loading are kept.
+     *
+     * @return a {@link CompletableFuture} being completed with the amount of loaded punishments
+     */
+    public CompletableFuture<Integer> loadCache() {
+        final int partitionCount = PunishmentStorage.PARTITIONS;
+        final int parallelism = Math.max(1, Math.min(partitionCount, storage.parallelism()));
+        final Queue<Integer> partitions = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(i);
+        }
+        final long now = System.currentTimeMillis();
+        final Map<UUID, List<TemporalPunishment>> loaded = new ConcurrentHashMap<>();
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final boolean initial = !cache.isLoaded();
+        final long generation = cache.beginLoad();
+        if (initial) {
+            plugin.getLogger().info("Loading punishments into cache using " + parallelism + " workers");
+        }
+        CompletableFuture<?>[] workers = new CompletableFuture[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = executeAsync(() -> {
+                Integer partition;
+                while ((partition = partitions.poll()) != null) {
+                    int rows = loadPartition(partition, now, loaded);
+                    count.addAndGet(rows);
+                    if (initial) {
+                        plugin.getLogger().info("Loaded punishment partition " + completed.incrementAndGet() + "/" + partitionCount + " (" + rows + " punishments)");
+                    }
+                }
+                return null;
+            }, service);
+        }
+        return CompletableFuture.allOf(workers).thenApply(unused -> {
+            cache.replaceAll(loaded, generation);
+            cache.markLoaded();
+            return count.get();
+        });
+    }
+
+    private int loadPartition(int partition, long now, Map<UUID, List<TemporalPunishment>> loaded) throws StorageException {
+        List<StoredPunishment> punishments = storage.findActive(BAN_AND_MUTE_TYPES, now, partition);
+        for (StoredPunishment stored : punishments) {
+            AbstractTemporalPunishment punishment = toPunishment(stored);
+            loaded.computeIfAbsent(stored.player(), uuid -> new ArrayList<>()).add(punishment);
+            if (stored.name() != null) {
+                cache.putPlayerName(stored.name(), stored.player());
+            }
+        }
+        return punishments.size();
+    }
+
+    /**
+     * Converts the content of the {@link PunishmentCache} into entries of a {@link PunishmentSnapshot}. Punishments that
+     * already expired but were not evicted yet are left out.
+     *
+     * @return all cached bans and mutes as snapshot entries
+     */
+    public List<PunishmentSnapshot.Entry> createSnapshot() {
+        final long now = System.currentTimeMillis();
+        Map<UUID, String> names = new HashMap<>();
+        cache.getPlayerNames().forEach((name, uuid) -> names.put(uuid, name));
+        List<PunishmentSnapshot.Entry> entries = new ArrayList<>();
+        cache.getAll().forEach((uuid, punishments) -> {
+            for (TemporalPunishment punishment : punishments) {
+                final long expiration = punishment.getDuration().expirationMillis();
+                if (expiration <= now) {
+                    continue;
+                }
+                entries.add(new PunishmentSnapshot.Entry(Util.trimUuid(uuid), names.get(uuid), cachedType(punishment).getName(), expiration,
+                        legacyReason(punishment), Util.trimUuid(punishment.getPunishmentUuid())));
+            }
+        });
+        return entries;
+    }
+
+    private String legacyReason(Punishment punishment) {
+        if (punishment instanceof AbstractPunishment abstractPunishment) {
+            return abstractPunishment.getData().reason().legacy();
+        }
+        return LegacyComponentSerializer.legacySection().serialize(punishment.getReason());
+    }
+
+    /**
+     * Fills the {@link PunishmentCache} with the entries of a {@link PunishmentSnapshot} and marks it as loaded.
+     *
+     * @param entries the entries of the snapshot
+     */
+    public void restoreSnapshot(List<PunishmentSnapshot.Entry> entries) {
+        final long generation = cache.beginLoad();
+        Map<UUID, List<TemporalPunishment>> restored = new HashMap<>();
+        for (PunishmentSnapshot.Entry entry : entries) {
+            final UUID uuid = Util.parseUuid(entry.player());
+            final UUID punishmentUuid = Util.parseUuid(entry.punishmentId());
+            final PunishmentDuration duration = PunishmentDuration.fromTimestamp(new Timestamp(entry.expiration()));
+            final PunishmentReason reason = PunishmentReason.fromLegacy(entry.reason());
+            TemporalPunishment punishment = switch (StandardPunishmentType.valueOf(entry.type())) {
+                case BAN, PERMANENT_BAN -> new DefaultBan(new PunishmentData(uuid, punishmentUuid, reason, duration), getContext());
+                case MUTE, PERMANENT_MUTE -> new DefaultMute(new PunishmentData(uuid, punishmentUuid, reason, duration), getContext());
+                default -> throw new IllegalArgumentException("unexpected punishment type in snapshot: " + entry.type());
+            };
+            restored.computeIfAbsent(uuid, key -> new ArrayList<>()).add(punishment);
+            if (entry.name() != null) {
+                cache.putPlayerName(entry.name(), uuid);
+            }
+        }
+        cache.replaceAll(restored, generation);
+        cache.markLoaded();
+    }
+
+    public PunishmentCache getCache() {
+        return cache;
+    }
+
+    public CleanRecordCache getCleanRecordCache() {
+        return cleanRecordCache;
+    }
+
+    public PunishmentIdCache getIdCache() {
+        return idCache;
+    }
+
+    public PunishmentStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return the queue inserts and deletes of punishments are grouped with, if write-behind is enabled
+     */
+    public Optional<WriteBehindQueue> getWriteBehindQueue() {
+        return Optional.ofNullable(plugin.getWriteBehindQueue());
+    }
+
     @Override
     public CompletableFuture<Boolean> isBanned(UUID playerUuid, Executor executor) {
-        return executeAsync(() -> !getPunishments(playerUuid, executor, StandardPunishmentType.BAN, StandardPunishmentType.PERMANENT_BAN).get().isEmpty(), executor);
+        if (cache.isLoaded()) {
+            final long now = System.currentTimeMillis();
+            for (Ban ban : cache.getBans(playerUuid)) {
+                if (ban.getDuration().expirationMillis() > now) {
+                    return CompletableFuture.completedFuture(true);
+                }
+            }
+            return CompletableFuture.completedFuture(false);
+        }
+        if (cleanRecordCache.isClean(playerUuid)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return executeAsync(() -> {
+            return storage.hasActive(playerUuid, BAN_TYPES, System.currentTimeMillis());
+        }, executor);
+    }
+
+    /**
+     * Position in a paged punishment history, encoded as an opaque url-safe string.
+     */
+    private record HistoryCursor(long expiration, UUID punishmentId) {
+
+        private static HistoryCursor decode(String cursor) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.lastIndexOf('/');
+                return new HistoryCursor(Long.parseLong(decoded.substring(0, separator)), UUID.fromString(decoded.substring(separator + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+            }
+        }
+
+        private String encode() {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString((expiration + "/" + punishmentId).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Key of a {@link #getPunishments(UUID, Executor, PunishmentType...)} lookup used to coalesce concurrent lookups. The
+     * types are kept in the order requested, since the result is ordered by them.
+     */
+    private record PunishmentLookup(UUID player, List<StandardPunishmentType> types) {
     }
 }
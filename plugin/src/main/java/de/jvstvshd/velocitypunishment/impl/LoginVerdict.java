@@ -0,0 +1,63 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.impl;
+
+import de.jvstvshd.velocitypunishment.api.punishment.Ban;
+import de.jvstvshd.velocitypunishment.api.punishment.Mute;
+import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
+import de.jvstvshd.velocitypunishment.internal.Util;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything needed to decide whether a player may join: the whitelist membership as well as the longest ban and mute.
+ *
+ * @param whitelisted whether the player may join with regard to the whitelist (always true if the whitelist is disabled)
+ * @param ban         the longest ban of the player or null if the player is not banned
+ * @param mute        the longest mute of the player or null if the player is not muted
+ */
+public record LoginVerdict(boolean whitelisted, @Nullable Ban ban, @Nullable Mute mute) {
+
+    /**
+     * Creates a verdict from the given punishments by choosing the longest ban and mute.
+     *
+     * @param whitelisted whether the player may join with regard to the whitelist
+     * @param punishments the punishments of the player
+     * @return the verdict
+     */
+    public static LoginVerdict of(boolean whitelisted, List<? extends Punishment> punishments) {
+        List<Ban> bans = new ArrayList<>();
+        List<Mute> mutes = new ArrayList<>();
+        for (Punishment punishment : punishments) {
+            if (punishment instanceof Ban ban)
+                bans.add(ban);
+            if (punishment instanceof Mute mute)
+                mutes.add(mute);
+        }
+        return new LoginVerdict(whitelisted, Util.getLongestPunishment(bans), Util.getLongestPunishment(mutes));
+    }
+}
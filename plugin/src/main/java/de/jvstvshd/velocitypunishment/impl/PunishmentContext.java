@@ -0,0 +1,48 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.impl;
+
+import de.jvstvshd.velocitypunishment.api.message.MessageProvider;
+import de.jvstvshd.velocitypunishment.api.punishment.PunishmentManager;
+import de.jvstvshd.velocitypunishment.api.punishment.util.PlayerResolver;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The services needed to {@link de.jvstvshd.velocitypunishment.api.punishment.Punishment#punish() punish},
+ * {@link de.jvstvshd.velocitypunishment.api.punishment.Punishment#cancel() cancel} or
+ * {@link de.jvstvshd.velocitypunishment.api.punishment.Punishment#change(de.jvstvshd.velocitypunishment.api.punishment.PunishmentDuration, net.kyori.adventure.text.Component) change}
+ * a punishment. One context is shared by all punishments of a {@link PunishmentManager}.
+ *
+ * @param storage           the storage punishments are persisted in
+ * @param service           the executor used for async operations
+ * @param punishmentManager the punishment manager the punishments belong to
+ * @param playerResolver    the player resolver used to look up player names
+ * @param messageProvider   the message provider used to create messages
+ */
+public record PunishmentContext(PunishmentStorage storage, ExecutorService service, PunishmentManager punishmentManager,
+                                PlayerResolver playerResolver, MessageProvider messageProvider) {
+}
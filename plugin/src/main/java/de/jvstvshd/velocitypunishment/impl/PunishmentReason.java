@@ -0,0 +1,104 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.impl;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The reason of a punishment. Reasons read from the database are kept in their legacy text form and only deserialized
+ * into a {@link Component} on first access. Reasons with the same text are shared, so each distinct reason is deserialized once.
+ */
+public final class PunishmentReason {
+
+    private static final int MAX_INTERNED = 4096;
+    private static final Map<String, PunishmentReason> INTERNED = new ConcurrentHashMap<>();
+
+    private volatile String legacy;
+    private volatile Component component;
+
+    private PunishmentReason(String legacy, Component component) {
+        this.legacy = legacy;
+        this.component = component;
+    }
+
+    /**
+     * @param component the reason
+     * @return a reason holding the given, already deserialized component
+     */
+    public static PunishmentReason of(Component component) {
+        return new PunishmentReason(null, component);
+    }
+
+    /**
+     * Returns the reason for the given legacy text (using {@link LegacyComponentSerializer#SECTION_CHAR}) without deserializing it.
+     * Up to {@value #MAX_INTERNED} distinct reasons are shared between all punishments.
+     *
+     * @param legacy the reason in its legacy text form
+     * @return a reason deserializing the given text on first access
+     */
+    public static PunishmentReason fromLegacy(String legacy) {
+        PunishmentReason reason = INTERNED.get(legacy);
+        if (reason != null) {
+            return reason;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            return new PunishmentReason(legacy, null);
+        }
+        return INTERNED.computeIfAbsent(legacy, key -> new PunishmentReason(key, null));
+    }
+
+    /**
+     * @return the reason as component, deserialized on first access
+     */
+    public Component component() {
+        Component component = this.component;
+        if (component == null) {
+            component = this.component = LegacyComponentSerializer.legacySection().deserialize(legacy);
+        }
+        return component;
+    }
+
+    /**
+     * @return the reason in its legacy text form, serialized on first access
+     */
+    public String legacy() {
+        String legacy = this.legacy;
+        if (legacy == null) {
+            legacy = this.legacy = LegacyComponentSerializer.legacySection().serialize(component);
+        }
+        return legacy;
+    }
+
+    @Override
+    public String toString() {
+        return "PunishmentReason{" +
+                "legacy='" + legacy() + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.impl;
+
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import de.jvstvshd.velocitypunishment.storage.PunishmentStorage;
+import de.jvstvshd.velocitypunishment.storage.StorageException;
+import de.jvstvshd.velocitypunishment.storage.StoredPunishment;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups the inserts and deletes of punishments into batches which are written in one atomic
+ * {@link PunishmentStorage#write(List, List) write}. A batch is flushed
+ * once it reached its maximum size or the flush window after its first write elapsed. Updates are queued as well, so they
+ * are never applied before the insert of the same punishment; an update of a punishment inserted in the same batch is merged
+ * into the insert. The futures returned for each write are completed when the batch containing it was committed. If a batch
+ * fails, its writes are retried one by one, so only the futures of the writes that fail on their own are completed
+ * exceptionally.
+ */
+public class WriteBehindQueue {
+
+    private final PunishmentStorage storage;
+    private final Logger logger;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final Object stateLock = new Object();
+    private volatile boolean running = true;
+
+    /**
+     * @param storage      the storage the batches are written to
+     * @param logger       the logger failed batches are reported to
+     * @param maxBatchSize the maximum amount of writes per batch
+     * @param windowMillis the time in milliseconds to wait for further writes after the first write of a batch
+     */
+    public WriteBehindQueue(PunishmentStorage storage, Logger logger, int maxBatchSize, long windowMillis) {
+        this.storage = storage;
+        this.logger = logger;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.thread = new Thread(this::run, "velocity-punishment-write-behind");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops accepting new writes and waits until all pending writes were flushed. Writes which were not flushed within the
+     * timeout are logged and their futures are completed exceptionally.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return whether all pending writes were flushed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (stateLock) {
+            running = false;
+        }
+        thread.join(unit.toMillis(timeout));
+        if (!thread.isAlive()) {
+            return true;
+        }
+        List<Write> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        logger.error("Could not flush " + pending.size() + " pending punishment writes within " + timeout + " " + unit.name().toLowerCase() +
+                ", they are discarded");
+        IllegalStateException exception = new IllegalStateException("write-behind queue was shut down before the write was flushed");
+        pending.forEach(write -> write.future().completeExceptionally(exception));
+        return false;
+    }
+
+    /**
+     * Queues the insertion of a punishment.
+     *
+     * @return a {@link CompletableFuture} being completed once the punishment was written
+     */
+    public CompletableFuture<Void> insert(StoredPunishment punishment) {
+        return enqueue(new Insert(punishment, new CompletableFuture<>()));
+    }
+
+    /**
+     * Queues the change of a punishment.
+     *
+     * @return a {@link CompletableFuture} being completed once the punishment was changed
+     * @see PunishmentStorage#update(UUID, StandardPunishmentType, long, String)
+     */
+    public CompletableFuture<Void> update(UUID punishmentId, StandardPunishmentType type, long expiration, String reason) {
+        return enqueue(new Update(punishmentId, type, expiration, reason, new CompletableFuture<>()));
+    }
+
+    /**
+     * Queues the deletion of a punishment.
+     *
+     * @return a {@link CompletableFuture} being completed once the punishment was deleted
+     */
+    public CompletableFuture<Void> delete(UUID punishmentId) {
+        return enqueue(new Delete(punishmentId, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Void> enqueue(Write write) {
+        synchronized (stateLock) {
+            if (!running) {
+                return CompletableFuture.failedFuture(new IllegalStateException("write-behind queue was shut down"));
+            }
+            queue.add(write);
+        }
+        return write.future();
+    }
+
+    private void run() {
+        List<Write> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Write first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    Write next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Write> batch) {
+        final Map<UUID, StoredPunishment> inserts = new LinkedHashMap<>();
+        final List<Update> updates = new ArrayList<>();
+        final List<UUID> deletes = new ArrayList<>();
+        for (Write write : batch) {
+            if (write instanceof Insert insert) {
+                inserts.put(insert.punishment().punishmentId(), insert.punishment());
+            } else if (write instanceof Update update) {
+                StoredPunishment inserted = inserts.get(update.punishmentId());
+                if (inserted != null) {
+                    inserts.put(update.punishmentId(), new StoredPunishment(inserted.punishmentId(), inserted.player(), inserted.name(),
+                            update.type(), update.expiration(), update.reason()));
+                } else {
+                    updates.add(update);
+                }
+            } else if (write instanceof Delete delete) {
+                deletes.add(delete.punishmentId());
+            }
+        }
+        try {
+            // punishments are only deleted after they were created, so applying all inserts first keeps their order
+            storage.write(new ArrayList<>(inserts.values()), deletes);
+        } catch (StorageException e) {
+            logger.warn("Could not write batch of " + batch.size() + " punishment changes, retrying them one by one", e);
+            batch.forEach(this::flushSingle);
+            return;
+        }
+        batch.stream().filter(write -> !updates.contains(write)).forEach(write -> write.future().complete(null));
+        // updates of punishments deleted in the same batch do not change anything once they are applied after the deletes
+        updates.forEach(this::flushSingle);
+    }
+
+    private void flushSingle(Write write) {
+        try {
+            if (write instanceof Insert insert) {
+                storage.insert(insert.punishment());
+            } else if (write instanceof Update update) {
+                storage.update(update.punishmentId(), update.type(), update.expiration(), update.reason());
+            } else if (write instanceof Delete delete) {
+                storage.delete(delete.punishmentId());
+            }
+        } catch (StorageException e) {
+            logger.error("Could not write punishment change " + write, e);
+            write.future().completeExceptionally(e);
+            return;
+        }
+        write.future().complete(null);
+    }
+
+    private interface Write {
+        CompletableFuture<Void> future();
+    }
+
+    private record Insert(StoredPunishment punishment, CompletableFuture<Void> future) implements Write {
+    }
+
+    private record Update(UUID punishmentId, StandardPunishmentType type, long expiration, String reason,
+                          CompletableFuture<Void> future) implements Write {
+    }
+
+    private record Delete(UUID punishmentId, CompletableFuture<Void> future) implements Write {
+    }
+}
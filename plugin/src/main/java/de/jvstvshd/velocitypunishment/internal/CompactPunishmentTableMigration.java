@@ -0,0 +1,284 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import de.jvstvshd.velocitypunishment.api.punishment.PunishmentDuration;
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the punishment table with binary uuids, type ids and epoch expirations. Tables of the first, unversioned schema,
+ * which stored uuids as hex strings, types as names and expirations as {@code DATETIME}, are converted while they stay
+ * readable and writable:
+ * <ol>
+ *     <li>the old punishment ids are indexed, so that the old table can be read in batches,</li>
+ *     <li>all rows are copied into a new table,</li>
+ *     <li>the secondary indexes of the new table are built, which is faster than maintaining them during the copy,</li>
+ *     <li>both tables are compared and rows inserted, changed or deleted in the meantime are applied to the new table,</li>
+ *     <li>the comparison is repeated while writes to both tables are blocked, and the new table replaces the old one.</li>
+ * </ol>
+ * The old ids are lower case hex strings, which sort like their binary form, so both tables are compared batch by batch.
+ * Rows without a valid id, player or type cannot be converted. They are logged and skipped; the old table is kept as
+ * <code>velocity_punishment_legacy</code>.
+ */
+public class CompactPunishmentTableMigration implements Migration {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS %s (punishment_id BINARY (16) NOT NULL PRIMARY KEY, " +
+            "uuid BINARY (16) NOT NULL, name VARCHAR (16), type TINYINT NOT NULL, expiration BIGINT NOT NULL, reason VARCHAR (1000))";
+    private static final String[][] INDEXES = {
+            {"velocity_punishment_player", "uuid, type, expiration"},
+            {"velocity_punishment_name", "name"},
+            {"velocity_punishment_type_expiration", "type, expiration"}
+    };
+    private static final String LEGACY_ID_INDEX = "velocity_punishment_legacy_id";
+    private static final Pattern LEGACY_ID = Pattern.compile("[0-9a-fA-F]{32}");
+    private static final int BATCH_SIZE = 5000;
+    private static final String COLUMNS = "punishment_id, uuid, name, type, expiration, reason";
+    private static final String COUNT_LEGACY_WITHOUT_ID = "SELECT COUNT(*) FROM velocity_punishment WHERE punishment_id IS NULL";
+    private static final String SELECT_LEGACY_BATCH = "SELECT " + COLUMNS + " FROM velocity_punishment " +
+            "WHERE punishment_id > ? ORDER BY punishment_id LIMIT " + BATCH_SIZE;
+    private static final String SELECT_MIGRATED_UNTIL = "SELECT " + COLUMNS + " FROM velocity_punishment_migration WHERE punishment_id <= ?";
+    private static final String SELECT_MIGRATED_RANGE = "SELECT " + COLUMNS + " FROM velocity_punishment_migration " +
+            "WHERE punishment_id > ? AND punishment_id <= ?";
+    private static final String REPLACE_MIGRATED = "REPLACE INTO velocity_punishment_migration (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_MIGRATED = "DELETE FROM velocity_punishment_migration WHERE punishment_id = ?";
+    private static final String DELETE_ALL_MIGRATED = "DELETE FROM velocity_punishment_migration";
+    private static final String DELETE_MIGRATED_AFTER = "DELETE FROM velocity_punishment_migration WHERE punishment_id > ?";
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public String description() {
+        return "compact punishment table with binary uuids";
+    }
+
+    @Override
+    public void migrate(SchemaMigrator migrator, Connection connection) throws SQLException {
+        if (migrator.isTextColumn(connection, "velocity_punishment", "uuid")) {
+            convertLegacyTable(migrator, connection);
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format(CREATE_TABLE, "velocity_punishment"));
+        }
+        createIndexes(migrator, connection, "velocity_punishment");
+    }
+
+    private void convertLegacyTable(SchemaMigrator migrator, Connection connection) throws SQLException {
+        final Logger logger = migrator.getLogger();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS velocity_punishment_migration");
+            statement.execute(String.format(CREATE_TABLE, "velocity_punishment_migration"));
+            ResultSet rs = statement.executeQuery(COUNT_LEGACY_WITHOUT_ID);
+            if (rs.next() && rs.getLong(1) > 0) {
+                logger.warn("Skipping " + rs.getLong(1) + " punishments without id, they are only kept in velocity_punishment_legacy");
+            }
+        }
+        migrator.createIndex(connection, "velocity_punishment", LEGACY_ID_INDEX, "punishment_id");
+        final Set<String> skipped = new HashSet<>();
+        reconcile(connection, logger, skipped, true);
+        onCopied(connection);
+        createIndexes(migrator, connection, "velocity_punishment_migration");
+        logger.info("Applied " + reconcile(connection, logger, skipped, false) + " punishments changed during the copy");
+        migrator.lockTables(connection, "velocity_punishment", "velocity_punishment_migration");
+        try {
+            final long changes = reconcile(connection, logger, skipped, false);
+            migrator.replaceTable(connection, "velocity_punishment", "velocity_punishment_migration", "velocity_punishment_legacy");
+            logger.info("Applied " + changes + " punishments changed during the index build and replaced the punishment table");
+        } finally {
+            migrator.unlockTables(connection);
+        }
+        migrator.dropIndex(connection, "velocity_punishment_legacy", LEGACY_ID_INDEX);
+        if (!skipped.isEmpty()) {
+            logger.warn("Skipped " + skipped.size() + " punishments which could not be converted, they are only kept in velocity_punishment_legacy");
+        }
+        logger.info("The old punishment table was kept as velocity_punishment_legacy");
+    }
+
+    /**
+     * Called once all rows were copied for the first time, while the old table is still in use. Does nothing by default;
+     * tests use it to change the old table during the migration.
+     *
+     * @param connection the connection the migration runs on
+     * @throws SQLException if a statement failed
+     */
+    void onCopied(Connection connection) throws SQLException {
+    }
+
+    private void createIndexes(SchemaMigrator migrator, Connection connection, String table) throws SQLException {
+        for (String[] index : INDEXES) {
+            migrator.createIndex(connection, table, index[0], index[1]);
+        }
+    }
+
+    /**
+     * Walks the old table in batches and makes the new table equal to it: converted rows missing in the new table or differing
+     * from it are written, rows of the new table without an old row are deleted.
+     *
+     * @return the number of rows written or deleted
+     */
+    private long reconcile(Connection connection, Logger logger, Set<String> skipped, boolean logProgress) throws SQLException {
+        long changes = 0;
+        long compared = 0;
+        String lastLegacyId = "";
+        byte[] lowerBound = null;
+        try (PreparedStatement selectLegacy = connection.prepareStatement(SELECT_LEGACY_BATCH);
+             PreparedStatement selectMigratedUntil = connection.prepareStatement(SELECT_MIGRATED_UNTIL);
+             PreparedStatement selectMigratedRange = connection.prepareStatement(SELECT_MIGRATED_RANGE);
+             PreparedStatement replace = connection.prepareStatement(REPLACE_MIGRATED);
+             PreparedStatement delete = connection.prepareStatement(DELETE_MIGRATED)) {
+            while (true) {
+                final Map<UUID, Row> legacyRows = new HashMap<>();
+                byte[] upperBound = null;
+                int count = 0;
+                selectLegacy.setString(1, lastLegacyId);
+                try (ResultSet rs = selectLegacy.executeQuery()) {
+                    while (rs.next()) {
+                        count++;
+                        lastLegacyId = rs.getString(1);
+                        final Row row = convertLegacyRow(rs, logger, skipped);
+                        if (row != null) {
+                            legacyRows.put(row.punishmentId(), row);
+                            upperBound = Util.uuidToBytes(row.punishmentId());
+                        }
+                    }
+                }
+                if (count == 0) {
+                    break;
+                }
+                compared += count;
+                if (upperBound == null) {
+                    continue;
+                }
+                final PreparedStatement selectMigrated;
+                if (lowerBound == null) {
+                    selectMigrated = selectMigratedUntil;
+                    selectMigrated.setBytes(1, upperBound);
+                } else {
+                    selectMigrated = selectMigratedRange;
+                    selectMigrated.setBytes(1, lowerBound);
+                    selectMigrated.setBytes(2, upperBound);
+                }
+                try (ResultSet rs = selectMigrated.executeQuery()) {
+                    while (rs.next()) {
+                        final Row migrated = new Row(Util.uuidFromBytes(rs.getBytes(1)), Util.uuidFromBytes(rs.getBytes(2)), rs.getString(3),
+                                rs.getInt(4), rs.getLong(5), rs.getString(6));
+                        final Row legacy = legacyRows.remove(migrated.punishmentId());
+                        if (legacy == null) {
+                            delete.setBytes(1, Util.uuidToBytes(migrated.punishmentId()));
+                            delete.addBatch();
+                            changes++;
+                        } else if (!legacy.equals(migrated)) {
+                            addReplace(replace, legacy);
+                            changes++;
+                        }
+                    }
+                }
+                for (Row row : legacyRows.values()) {
+                    addReplace(replace, row);
+                    changes++;
+                }
+                replace.executeBatch();
+                delete.executeBatch();
+                lowerBound = upperBound;
+                if (logProgress) {
+                    logger.info("Migrated " + compared + " punishments");
+                }
+            }
+        }
+        try (PreparedStatement deleteRemaining = connection.prepareStatement(lowerBound == null ? DELETE_ALL_MIGRATED : DELETE_MIGRATED_AFTER)) {
+            if (lowerBound != null) {
+                deleteRemaining.setBytes(1, lowerBound);
+            }
+            changes += deleteRemaining.executeUpdate();
+        }
+        return changes;
+    }
+
+    private Row convertLegacyRow(ResultSet rs, Logger logger, Set<String> skipped) throws SQLException {
+        final String punishmentId = rs.getString(1);
+        if (!LEGACY_ID.matcher(punishmentId).matches()) {
+            return skip(punishmentId, "invalid id", logger, skipped);
+        }
+        final String player = rs.getString(2);
+        if (player == null) {
+            return skip(punishmentId, "no player", logger, skipped);
+        }
+        final String typeName = rs.getString(4);
+        final StandardPunishmentType type;
+        final UUID playerUuid;
+        try {
+            playerUuid = Util.parseUuid(player);
+        } catch (IllegalArgumentException e) {
+            return skip(punishmentId, "invalid player uuid " + player, logger, skipped);
+        }
+        try {
+            type = StandardPunishmentType.valueOf(String.valueOf(typeName).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return skip(punishmentId, "unknown type " + typeName, logger, skipped);
+        }
+        final Timestamp expiration = rs.getTimestamp(5);
+        return new Row(Util.parseUuid(punishmentId), playerUuid, rs.getString(3), type.getId(),
+                expiration == null || type.isPermanent() ? PunishmentDuration.MAX.getTime() : expiration.getTime(), rs.getString(6));
+    }
+
+    private Row skip(String punishmentId, String problem, Logger logger, Set<String> skipped) {
+        if (skipped.add(punishmentId)) {
+            logger.warn("Skipping punishment " + punishmentId + ": " + problem);
+        }
+        return null;
+    }
+
+    private void addReplace(PreparedStatement replace, Row row) throws SQLException {
+        replace.setBytes(1, Util.uuidToBytes(row.punishmentId()));
+        replace.setBytes(2, Util.uuidToBytes(row.player()));
+        replace.setString(3, row.name());
+        replace.setInt(4, row.type());
+        replace.setLong(5, row.expiration());
+        replace.setString(6, row.reason());
+        replace.addBatch();
+    }
+
+    private record Row(UUID punishmentId, UUID player, String name, int type, long expiration, String reason) {
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Creates the whitelist table with binary uuids. A whitelist table of the first, unversioned schema is converted and kept as
+ * <code>velocity_punishment_whitelist_legacy</code>.
+ */
+public class CompactWhitelistMigration implements Migration {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS %s (uuid BINARY (16) NOT NULL PRIMARY KEY)";
+
+    @Override
+    public int version() {
+        return 2;
+    }
+
+    @Override
+    public String description() {
+        return "compact whitelist table with binary uuids";
+    }
+
+    @Override
+    public void migrate(SchemaMigrator migrator, Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (!migrator.isTextColumn(connection, "velocity_punishment_whitelist", "uuid")) {
+                statement.execute(String.format(CREATE_TABLE, "velocity_punishment_whitelist"));
+                return;
+            }
+            statement.execute("DROP TABLE IF EXISTS velocity_punishment_whitelist_migration");
+            statement.execute(String.format(CREATE_TABLE, "velocity_punishment_whitelist_migration"));
+            try (PreparedStatement insert = connection.prepareStatement("INSERT IGNORE INTO velocity_punishment_whitelist_migration (uuid) VALUES (?)")) {
+                ResultSet rs = statement.executeQuery("SELECT uuid FROM velocity_punishment_whitelist WHERE uuid IS NOT NULL");
+                while (rs.next()) {
+                    try {
+                        insert.setBytes(1, Util.uuidToBytes(Util.parseUuid(rs.getString(1))));
+                    } catch (IllegalArgumentException e) {
+                        migrator.getLogger().warn("Skipping whitelisted player with invalid uuid " + rs.getString(1));
+                        continue;
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+        migrator.replaceTable(connection, "velocity_punishment_whitelist", "velocity_punishment_whitelist_migration",
+                "velocity_punishment_whitelist_legacy");
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One step of the database schema, applied once by the {@link SchemaMigrator}. Steps are identified by their version and
+ * applied in ascending order.
+ */
+public interface Migration {
+
+    /**
+     * @return the schema version this migration leads to. Versions must be unique and positive.
+     */
+    int version();
+
+    /**
+     * @return a short description of this migration which is logged and stored in the schema version table
+     */
+    String description();
+
+    /**
+     * Applies this migration. Migrations must be able to run against a schema that is already partly or fully in the target
+     * state, since installations may have created it before the schema was versioned.
+     *
+     * @param migrator   the migrator running this migration, providing helpers for online schema changes
+     * @param connection the connection to apply the migration with
+     * @throws SQLException if the migration failed
+     */
+    void migrate(SchemaMigrator migrator, Connection connection) throws SQLException;
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent requests with the same key share one in-flight request. A request is only
+ * started if there is no pending request for the same key; once it completes, the next request starts a new one.
+ *
+ * @param <K> the type of the request key
+ * @param <V> the type of the result
+ */
+public class RequestCoalescer<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the pending future for the given key or starts a new request using the given supplier.
+     *
+     * @param key     the key identifying the request
+     * @param request the request to start if there is no pending one for this key
+     * @return a {@link CompletableFuture} being completed with the result of the (shared) request. Every caller gets its
+     * own copy, so completing or timing out the returned future does not affect other callers.
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> request) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> pending = inFlight.putIfAbsent(key, future);
+        if (pending != null) {
+            return pending.copy();
+        }
+        try {
+            request.get().whenComplete((result, throwable) -> {
+                inFlight.remove(key, future);
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(result);
+                }
+            });
+        } catch (Exception e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future.copy();
+    }
+
+    /**
+     * @return the amount of requests that are in flight at the moment
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
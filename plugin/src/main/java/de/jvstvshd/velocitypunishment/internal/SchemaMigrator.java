@@ -0,0 +1,279 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Brings the database schema up to date on startup. The applied version is stored in the table
+ * <code>velocity_punishment_schema</code> together with the time each step took; all {@link Migration}s with a higher
+ * version are applied in ascending order. A named database lock ensures that only one proxy sharing the database migrates
+ * at a time. Statements which differ between the supported databases are provided by the {@link SqlDialect}.
+ */
+public class SchemaMigrator {
+
+    private static final String CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS velocity_punishment_schema (version INT NOT NULL PRIMARY KEY, " +
+            "description VARCHAR (255), applied_at BIGINT NOT NULL, duration BIGINT NOT NULL)";
+    private static final String SELECT_VERSION = "SELECT MAX(version) FROM velocity_punishment_schema";
+    private static final String INSERT_VERSION = "INSERT INTO velocity_punishment_schema (version, description, applied_at, duration) VALUES (?, ?, ?, ?)";
+    private static final String LOCK_NAME = "velocity_punishment_schema";
+    private static final int LOCK_TIMEOUT_SECONDS = 300;
+
+    private final DataSource dataSource;
+    private final SqlDialect dialect;
+    private final Logger logger;
+    private final List<Migration> migrations;
+    private boolean tablesLocked = false;
+
+    public SchemaMigrator(DataSource dataSource, SqlDialect dialect, Logger logger) {
+        this(dataSource, dialect, logger, ImmutableList.of(new CompactPunishmentTableMigration(), new CompactWhitelistMigration()));
+    }
+
+    public SchemaMigrator(DataSource dataSource, SqlDialect dialect, Logger logger, List<Migration> migrations) {
+        this.dataSource = dataSource;
+        this.dialect = dialect;
+        this.logger = logger;
+        this.migrations = ImmutableList.copyOf(migrations.stream().sorted(Comparator.comparingInt(Migration::version)).toList());
+        for (int i = 1; i < this.migrations.size(); i++) {
+            if (this.migrations.get(i - 1).version() == this.migrations.get(i).version()) {
+                throw new IllegalArgumentException("duplicate schema version " + this.migrations.get(i).version());
+            }
+        }
+    }
+
+    /**
+     * Applies all migrations that were not applied yet.
+     *
+     * @return the schema version after the migration
+     * @throws SQLException if a migration failed. Migrations applied before the failing one stay recorded.
+     */
+    public int migrate() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_VERSION_TABLE);
+            }
+            acquireLock(connection);
+            try {
+                int version = currentVersion(connection);
+                for (Migration migration : migrations) {
+                    if (migration.version() <= version) {
+                        continue;
+                    }
+                    logger.info("Applying schema version " + migration.version() + ": " + migration.description());
+                    final long start = System.currentTimeMillis();
+                    migration.migrate(this, connection);
+                    final long duration = System.currentTimeMillis() - start;
+                    try (PreparedStatement statement = connection.prepareStatement(INSERT_VERSION)) {
+                        statement.setInt(1, migration.version());
+                        statement.setString(2, migration.description());
+                        statement.setLong(3, start);
+                        statement.setLong(4, duration);
+                        statement.executeUpdate();
+                    }
+                    logger.info("Applied schema version " + migration.version() + " in " + duration + "ms");
+                    version = migration.version();
+                }
+                return version;
+            } finally {
+                releaseLock(connection);
+            }
+        }
+    }
+
+    private int currentVersion(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_VERSION)) {
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void acquireLock(Connection connection) throws SQLException {
+        if (!dialect.acquireLock(connection, LOCK_NAME, LOCK_TIMEOUT_SECONDS)) {
+            throw new SQLException("Could not acquire schema migration lock within " + LOCK_TIMEOUT_SECONDS + " seconds");
+        }
+    }
+
+    private void releaseLock(Connection connection) {
+        try {
+            dialect.releaseLock(connection, LOCK_NAME);
+        } catch (SQLException e) {
+            logger.warn("Could not release schema migration lock", e);
+        }
+    }
+
+    /**
+     * @param connection the connection to use
+     * @param table      the name of the table
+     * @param column     the name of the column
+     * @return the data type of the column, e.g. <code>varchar</code>, or null if the column does not exist
+     * @throws SQLException if the query failed
+     */
+    public String columnType(Connection connection, String table, String column) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = " + dialect.currentSchema() + " AND TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+            statement.setString(1, table);
+            statement.setString(2, column);
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * @param connection the connection to use
+     * @param table      the name of the table
+     * @param column     the name of the column
+     * @return whether the column exists and stores text, as uuids did in the first schema
+     * @throws SQLException if the query failed
+     */
+    public boolean isTextColumn(Connection connection, String table, String column) throws SQLException {
+        final String type = columnType(connection, table, column);
+        return type != null && type.toLowerCase(Locale.ROOT).contains("char");
+    }
+
+    /**
+     * Alters a table without blocking reads and writes, if the database is able to apply the change in place. Otherwise, the
+     * change is applied with the default algorithm, which may lock the table for its duration.
+     *
+     * @param connection the connection to use
+     * @param table      the name of the table
+     * @param alteration the alteration, e.g. <code>ADD COLUMN ...</code>
+     * @throws SQLException if the alteration failed
+     */
+    public void alterOnline(Connection connection, String table, String alteration) throws SQLException {
+        execute(connection, "ALTER TABLE " + table + " " + alteration);
+    }
+
+    /**
+     * Creates an index, if it does not exist yet, without blocking reads and writes if the database is able to.
+     *
+     * @param connection the connection to use
+     * @param table      the name of the table
+     * @param index      the name of the index, which must be unique within the schema
+     * @param columns    the indexed columns, separated by commas
+     * @throws SQLException if the index could not be created
+     */
+    public void createIndex(Connection connection, String table, String index, String columns) throws SQLException {
+        if (!indexExists(connection, table, index)) {
+            execute(connection, "CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    /**
+     * Drops an index if it exists.
+     *
+     * @param connection the connection to use
+     * @param table      the name of the table
+     * @param index      the name of the index
+     * @throws SQLException if the index could not be dropped
+     */
+    public void dropIndex(Connection connection, String table, String index) throws SQLException {
+        if (indexExists(connection, table, index)) {
+            execute(connection, dialect.dropIndex(table, index));
+        }
+    }
+
+    /**
+     * @param connection the connection to use
+     * @param table      the name of the table
+     * @param index      the name of the index
+     * @return whether the table has an index with the given name
+     * @throws SQLException if the query failed
+     */
+    public boolean indexExists(Connection connection, String table, String index) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM " + dialect.indexTable() +
+                " WHERE TABLE_SCHEMA = " + dialect.currentSchema() + " AND TABLE_NAME = ? AND INDEX_NAME = ?")) {
+            statement.setString(1, table);
+            statement.setString(2, index);
+            return statement.executeQuery().next();
+        }
+    }
+
+    /**
+     * Blocks writes of other connections to the given tables until {@link #unlockTables(Connection)} is called. While the
+     * tables are locked, the connection may only access these tables.
+     *
+     * @param connection the connection to use
+     * @param tables     the tables to lock
+     * @throws SQLException if the tables could not be locked
+     */
+    public void lockTables(Connection connection, String... tables) throws SQLException {
+        dialect.lockTables(connection, tables);
+        tablesLocked = true;
+    }
+
+    /**
+     * Releases the locks of {@link #lockTables(Connection, String...)}.
+     *
+     * @param connection the connection the tables were locked with
+     * @throws SQLException if the tables could not be unlocked
+     */
+    public void unlockTables(Connection connection) throws SQLException {
+        tablesLocked = false;
+        dialect.unlockTables(connection);
+    }
+
+    /**
+     * Replaces a table by another one. The replaced table is kept under a new name. If the tables are not
+     * {@link #lockTables(Connection, String...) locked}, MariaDB swaps them atomically; locked tables can only be renamed one
+     * after another, but other connections still wait for the lock and see the replacement afterwards.
+     *
+     * @param connection  the connection to use
+     * @param table       the table to replace
+     * @param replacement the table that takes the name of the replaced table
+     * @param backup      the new name of the replaced table
+     * @throws SQLException if the tables could not be renamed
+     */
+    public void replaceTable(Connection connection, String table, String replacement, String backup) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (dialect == SqlDialect.MARIADB && !tablesLocked) {
+                statement.execute("RENAME TABLE " + table + " TO " + backup + ", " + replacement + " TO " + table);
+            } else {
+                statement.execute("ALTER TABLE " + table + " RENAME TO " + backup);
+                statement.execute("ALTER TABLE " + replacement + " RENAME TO " + table);
+            }
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        final long start = System.currentTimeMillis();
+        dialect.alter(connection, logger, sql);
+        logger.info("Executed '" + sql + "' in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+}
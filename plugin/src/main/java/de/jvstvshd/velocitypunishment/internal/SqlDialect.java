@@ -0,0 +1,179 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The databases the {@link SchemaMigrator} can migrate, with the statements which differ between them. Queries of the storages
+ * are shared, since the embedded database runs in MySQL compatibility mode.
+ */
+public enum SqlDialect {
+
+    /**
+     * MariaDB or MySQL. The database may be shared by several proxies, so migrations lock it and change tables online.
+     * Only statements both databases understand are used; e.g. the existence of indexes is checked beforehand, since MySQL
+     * does not support <code>IF [NOT] EXISTS</code> for them.
+     */
+    MARIADB {
+        @Override
+        String currentSchema() {
+            return "DATABASE()";
+        }
+
+        @Override
+        boolean acquireLock(Connection connection, String name, int timeoutSeconds) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                statement.setString(1, name);
+                statement.setInt(2, timeoutSeconds);
+                ResultSet rs = statement.executeQuery();
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+
+        @Override
+        void releaseLock(Connection connection, String name) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                statement.setString(1, name);
+                statement.executeQuery();
+            }
+        }
+
+        @Override
+        void alter(Connection connection, Logger logger, String sql) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql + (sql.startsWith("ALTER") ? ", ALGORITHM=INPLACE, LOCK=NONE" : " ALGORITHM=INPLACE LOCK=NONE"));
+            } catch (SQLException e) {
+                logger.warn("Could not apply '" + sql + "' online (" + e.getMessage() + "), the table may be locked during the change");
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+
+        @Override
+        String indexTable() {
+            return "information_schema.STATISTICS";
+        }
+
+        @Override
+        String dropIndex(String table, String index) {
+            return "DROP INDEX " + index + " ON " + table;
+        }
+
+        @Override
+        void lockTables(Connection connection, String... tables) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LOCK TABLES " + String.join(" WRITE, ", tables) + " WRITE");
+            }
+        }
+
+        @Override
+        void unlockTables(Connection connection) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("UNLOCK TABLES");
+            }
+        }
+    },
+    /**
+     * The embedded H2 database. It is only opened by one proxy, so locks are not needed.
+     */
+    H2 {
+        @Override
+        String currentSchema() {
+            return "CURRENT_SCHEMA";
+        }
+
+        @Override
+        boolean acquireLock(Connection connection, String name, int timeoutSeconds) {
+            return true;
+        }
+
+        @Override
+        void releaseLock(Connection connection, String name) {
+        }
+
+        @Override
+        void alter(Connection connection, Logger logger, String sql) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        }
+
+        @Override
+        String indexTable() {
+            return "information_schema.INDEXES";
+        }
+
+        @Override
+        String dropIndex(String table, String index) {
+            return "DROP INDEX " + index;
+        }
+
+        @Override
+        void lockTables(Connection connection, String... tables) {
+        }
+
+        @Override
+        void unlockTables(Connection connection) {
+        }
+    };
+
+    /**
+     * @return the SQL expression of the schema the tables are created in
+     */
+    abstract String currentSchema();
+
+    abstract boolean acquireLock(Connection connection, String name, int timeoutSeconds) throws SQLException;
+
+    abstract void releaseLock(Connection connection, String name) throws SQLException;
+
+    /**
+     * Executes a schema change, without blocking reads and writes if the database is able to.
+     */
+    abstract void alter(Connection connection, Logger logger, String sql) throws SQLException;
+
+    /**
+     * @return the information schema table listing the indexes, with the columns <code>TABLE_SCHEMA</code>,
+     * <code>TABLE_NAME</code> and <code>INDEX_NAME</code>
+     */
+    abstract String indexTable();
+
+    abstract String dropIndex(String table, String index);
+
+    /**
+     * Blocks writes of other connections to the given tables until {@link #unlockTables(Connection)} is called. While the
+     * tables are locked, the connection may only access these tables.
+     */
+    abstract void lockTables(Connection connection, String... tables) throws SQLException;
+
+    abstract void unlockTables(Connection connection) throws SQLException;
+}
@@ -41,6 +41,8 @@ import net.kyori.adventure.text.event.HoverEvent;
 import net.kyori.adventure.text.event.HoverEventSource;
 import net.kyori.adventure.text.format.NamedTextColor;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
@@ -139,10 +141,41 @@ public class Util {
         return out;
     }
 
+    /**
+     * Computes the uuid a player with the given name gets assigned by the proxy in offline mode.
+     *
+     * @param name the name of the player
+     * @return the offline mode uuid of this player
+     */
+    public static UUID offlineUuid(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
     public static String trimUuid(UUID origin) {
         return origin.toString().toLowerCase().replace("-", "");
     }
 
+    /**
+     * Converts the given uuid into its 16 byte binary form, as it is stored in the database.
+     *
+     * @param uuid the uuid
+     * @return the most significant followed by the least significant bits of the uuid
+     */
+    public static byte[] uuidToBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    /**
+     * Converts the 16 byte binary form of a uuid back into a uuid.
+     *
+     * @param bytes the binary form, as created by {@link #uuidToBytes(UUID)}
+     * @return the uuid
+     */
+    public static UUID uuidFromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
     public static boolean sendErrorMessageIfErrorOccurred(SimpleCommand.Invocation invocation, CommandSource source, UUID uuid, Throwable throwable, VelocityPunishmentPlugin plugin) {
         if (throwable != null) {
             source.sendMessage(plugin.getMessageProvider().internalError(source, true));
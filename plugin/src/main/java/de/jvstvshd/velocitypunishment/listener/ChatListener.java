@@ -30,21 +30,20 @@ import com.velocitypowered.api.event.player.PlayerChatEvent;
 import com.velocitypowered.api.proxy.Player;
 import de.jvstvshd.velocitypunishment.VelocityPunishmentPlugin;
 import de.jvstvshd.velocitypunishment.api.punishment.Mute;
-import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
 import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
 import de.jvstvshd.velocitypunishment.impl.DefaultMute;
 import de.jvstvshd.velocitypunishment.internal.Util;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ChatListener {
 
@@ -55,49 +54,31 @@ public class ChatListener {
     public ChatListener(VelocityPunishmentPlugin plugin) {
         this.plugin = plugin;
         this.service = plugin.getService();
-        mutes = new HashMap<>();
+        mutes = new ConcurrentHashMap<>();
     }
 
     @Subscribe
     public void onChat(PlayerChatEvent event) {
         Player player = event.getPlayer();
         MuteContainer container = mutes.get(player.getUniqueId());
-        if (container != null) {
-            if (container.getType() == MuteType.NOT_MUTED) {
-                return;
-            }
-            if (container.getType() == MuteType.LOADING) {
-                event.setResult(PlayerChatEvent.ChatResult.denied());
-                event.getPlayer().sendMessage(Component.text("Please wait a moment...").color(NamedTextColor.GRAY));
-                return;
-            }
-            if (!container.getMute().isOngoing()) {
-                container.setType(MuteType.LOADING);
-                container.getMute().cancel().whenCompleteAsync((punishment, throwable) -> {
-                    if (throwable != null) {
-                        throwable.printStackTrace();
-                        event.getPlayer().sendMessage(plugin.getMessageProvider().internalError(event.getPlayer(), true));
-                    }
-                    container.setMute(null);
-                    try {
-                        update(event.getPlayer().getUniqueId());
-                    } catch (ExecutionException | InterruptedException | TimeoutException e) {
-                        e.printStackTrace();
-                    }
-                });
-                return;
-            }
-            event.setResult(PlayerChatEvent.ChatResult.denied());
-            event.getPlayer().sendMessage(container.getMute().createFullReason(event.getPlayer()));
-        } else {
-            try {
+        if (container == null) {
+            if (!plugin.getPunishmentCache().isLoaded()) {
                 update(player.getUniqueId());
-            } catch (ExecutionException | InterruptedException | TimeoutException e) {
-                e.printStackTrace();
-                event.getPlayer().sendMessage(plugin.getMessageProvider().internalError(event.getPlayer(), true));
+                denyWhileLoading(event);
+                return;
             }
-            onChat(event);
+            container = updateFromCache(player.getUniqueId());
         }
+        if (container.getType() == MuteType.LOADING) {
+            denyWhileLoading(event);
+            return;
+        }
+        Mute mute = container.getMute(System.currentTimeMillis());
+        if (mute == null) {
+            return;
+        }
+        event.setResult(PlayerChatEvent.ChatResult.denied());
+        player.sendMessage(mute.createFullReason(player));
     }
 
     @Subscribe
@@ -105,15 +86,88 @@ public class ChatListener {
         mutes.remove(event.getPlayer().getUniqueId());
     }
 
-    public void update(UUID uuid) throws ExecutionException, InterruptedException, TimeoutException {
-        List<Punishment> punishments = plugin.getPunishmentManager().getPunishments(uuid,
-                service, StandardPunishmentType.MUTE, StandardPunishmentType.PERMANENT_MUTE).get(7, TimeUnit.SECONDS);
-        if (!punishments.isEmpty()) {
-            Mute mute = Util.getLongestPunishment(Util.convert(punishments));
-            mutes.put(uuid, new MuteContainer().setMute(mute));
-        } else {
-            mutes.put(uuid, new MuteContainer());
+    /**
+     * Called by the {@link de.jvstvshd.velocitypunishment.cache.ExpiryScheduler} once a mute has expired. If this was the
+     * mute the player is currently muted by, the player is informed when no other mute applies.
+     *
+     * @param player the uuid of the muted player
+     * @param mute   the expired mute
+     */
+    public void onExpiry(UUID player, Mute mute) {
+        MuteContainer container = mutes.get(player);
+        if (container == null || container.getMute() == null || !container.getMute().getPunishmentUuid().equals(mute.getPunishmentUuid())) {
+            return;
+        }
+        MuteContainer updated = plugin.getPunishmentCache().isLoaded() ? updateFromCache(player) : container.setMute(null);
+        if (updated.getType() == MuteType.NOT_MUTED) {
+            plugin.getServer().getPlayer(player).ifPresent(onlinePlayer ->
+                    onlinePlayer.sendMessage(plugin.getMessageProvider().provide("punishment.mute.expired", onlinePlayer, true).color(NamedTextColor.GREEN)));
+        }
+    }
+
+    /**
+     * Updates the mute state of all players this listener keeps track of from the punishment cache, e.g. after the cache was
+     * reloaded. Does nothing while the cache is not loaded.
+     */
+    public void refreshFromCache() {
+        if (!plugin.getPunishmentCache().isLoaded()) {
+            return;
+        }
+        for (UUID uuid : mutes.keySet()) {
+            updateFromCache(uuid);
+        }
+    }
+
+    private void denyWhileLoading(PlayerChatEvent event) {
+        event.setResult(PlayerChatEvent.ChatResult.denied());
+        event.getPlayer().sendMessage(Component.text("Please wait a moment...").color(NamedTextColor.GRAY));
+    }
+
+    /**
+     * Reloads the mute state of the given player. If the punishment cache is loaded, this is done immediately, otherwise the
+     * player is marked as {@link MuteType#LOADING loading} until the mutes were queried from the database. Failures are
+     * handled according to {@link de.jvstvshd.velocitypunishment.config.ConfigData#isFailOpen()}.
+     *
+     * @param uuid the uuid of the player
+     * @return a {@link CompletableFuture} being completed with the new {@link MuteContainer} of this player
+     */
+    public CompletableFuture<MuteContainer> update(UUID uuid) {
+        if (plugin.getPunishmentCache().isLoaded()) {
+            return CompletableFuture.completedFuture(updateFromCache(uuid));
         }
+        MuteContainer container = mutes.computeIfAbsent(uuid, key -> new MuteContainer(MuteType.LOADING));
+        container.setType(MuteType.LOADING);
+        return plugin.getPunishmentManager().getPunishments(uuid, service, StandardPunishmentType.MUTE, StandardPunishmentType.PERMANENT_MUTE)
+                .orTimeout(7, TimeUnit.SECONDS)
+                .handle((punishments, throwable) -> {
+                    if (throwable == null) {
+                        Mute mute = longestMute(Util.convert(punishments));
+                        container.setMute(mute);
+                        if (mute != null) {
+                            plugin.getExpiryScheduler().schedule(uuid, mute);
+                        }
+                        return container;
+                    }
+                    final boolean failOpen = plugin.getConfig().isFailOpen();
+                    plugin.getLogger().error("Could not check mutes of " + uuid + ", " + (failOpen ? "allowing" : "denying") +
+                            " chat messages (fallback decision #" + plugin.getSnapshot().recordFallbackDecision() + ")", throwable);
+                    if (failOpen) {
+                        container.setMute(null);
+                    } else {
+                        mutes.remove(uuid, container);
+                    }
+                    return container;
+                });
+    }
+
+    private MuteContainer updateFromCache(UUID uuid) {
+        MuteContainer container = new MuteContainer().setMute(longestMute(plugin.getPunishmentCache().getMutes(uuid)));
+        mutes.put(uuid, container);
+        return container;
+    }
+
+    private Mute longestMute(List<Mute> punishments) {
+        return punishments.isEmpty() ? null : Util.getLongestPunishment(punishments);
     }
 
     public Map<UUID, MuteContainer> getMutes() {
@@ -126,35 +180,74 @@ public class ChatListener {
         LOADING
     }
 
+    /**
+     * Holds the mute state of a player. Type, mute and expiration are always exchanged together, so readers never observe a
+     * muted state without its mute. The expiration is kept in epoch milliseconds, so checking a chat message does not allocate.
+     */
     public static class MuteContainer {
-        private MuteType type;
-        private Mute mute;
+        private final AtomicReference<State> state;
 
         public MuteContainer() {
-            type = MuteType.NOT_MUTED;
+            this(MuteType.NOT_MUTED);
         }
 
         public MuteContainer(boolean muted) {
-            type = muted ? MuteType.MUTED : MuteType.NOT_MUTED;
+            this(muted ? MuteType.MUTED : MuteType.NOT_MUTED);
+        }
+
+        private MuteContainer(MuteType type) {
+            state = new AtomicReference<>(new State(type, null, 0));
         }
 
         public MuteType getType() {
-            return type;
+            return state.get().type();
         }
 
         public void setType(MuteType type) {
-            this.type = type;
+            state.updateAndGet(current -> new State(type, current.mute(), current.expiration()));
+        }
+
+        /**
+         * Atomically changes the type of this container if it currently is the expected one.
+         *
+         * @param expected the expected current type
+         * @param type     the new type
+         * @return true if the type was changed
+         */
+        public boolean compareAndSetType(MuteType expected, MuteType type) {
+            State current;
+            do {
+                current = state.get();
+                if (current.type() != expected) {
+                    return false;
+                }
+            } while (!state.compareAndSet(current, new State(type, current.mute(), current.expiration())));
+            return true;
         }
 
         public Mute getMute() {
-            return mute;
+            return state.get().mute();
+        }
+
+        /**
+         * @param now the current time in milliseconds since the epoch
+         * @return the mute if this container is {@link MuteType#MUTED muted} and the mute has not expired at the given time, otherwise null
+         */
+        public Mute getMute(long now) {
+            State current = state.get();
+            return current.type() == MuteType.MUTED && now < current.expiration() ? current.mute() : null;
         }
 
         public MuteContainer setMute(Mute mute) {
-            if (mute != null && ((DefaultMute) mute).isValid())
-                this.type = MuteType.MUTED;
-            this.mute = mute;
+            if (mute != null && ((DefaultMute) mute).isValid()) {
+                state.set(new State(MuteType.MUTED, mute, mute.getDuration().expirationMillis()));
+            } else {
+                state.set(new State(MuteType.NOT_MUTED, null, 0));
+            }
             return this;
         }
+
+        private record State(MuteType type, Mute mute, long expiration) {
+        }
     }
 }
@@ -24,22 +24,25 @@
 
 package de.jvstvshd.velocitypunishment.listener;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.ResultedEvent;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.proxy.ProxyServer;
 import de.jvstvshd.velocitypunishment.VelocityPunishmentPlugin;
 import de.jvstvshd.velocitypunishment.api.punishment.Ban;
 import de.jvstvshd.velocitypunishment.api.punishment.Mute;
-import de.jvstvshd.velocitypunishment.api.punishment.Punishment;
 import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import de.jvstvshd.velocitypunishment.impl.DefaultPunishmentManager;
+import de.jvstvshd.velocitypunishment.impl.LoginVerdict;
 import de.jvstvshd.velocitypunishment.internal.Util;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -47,60 +50,95 @@ public record ConnectListener(VelocityPunishmentPlugin plugin,
                               ExecutorService service, ProxyServer proxyServer, ChatListener chatListener) {
 
     @Subscribe
-    public void onConnect(LoginEvent event) throws SQLException {
-        if (plugin.whitelistActive()) {
-            plugin.getLogger().info("Whitelist is activated.");
-            try (var connection = plugin.getDataSource().getConnection();
-                 var statement = connection.prepareStatement("SELECT * FROM velocity_punishment_whitelist WHERE uuid = ?;")) {
-                statement.setString(1, Util.trimUuid(event.getPlayer().getUniqueId()));
-                if (!statement.executeQuery().next()) {
-                    event.setResult(ResultedEvent.ComponentResult.denied(Component.text("WHITELIST").color(NamedTextColor.DARK_RED)));
-                    return;
-                }
-            }
+    public EventTask onConnect(LoginEvent event) {
+        return EventTask.resumeWhenComplete(getLoginVerdict(event.getPlayer().getUniqueId())
+                .thenAccept(verdict -> handleVerdict(event, verdict))
+                .exceptionally(throwable -> {
+                    final boolean failOpen = plugin.getConfig().isFailOpen();
+                    plugin.getLogger().error("Could not check punishments of " + event.getPlayer().getUsername() + ", " + (failOpen ? "allowing" : "denying") +
+                            " login (fallback decision #" + plugin.getSnapshot().recordFallbackDecision() + ")", throwable);
+                    if (!failOpen) {
+                        event.setResult(ResultedEvent.ComponentResult.denied(plugin.getMessageProvider().internalError(event.getPlayer(), true)));
+                    }
+                    return null;
+                }));
+    }
+
+    /**
+     * Rejects permanently banned players before the proxy performs encryption and authentication. This check only
+     * relies on the {@link de.jvstvshd.velocitypunishment.cache.PunishmentCache}; {@link #onConnect(LoginEvent)} remains
+     * the authoritative check. The locale of the connecting player is not known yet, so players are only rejected here if
+     * a language is forced in the configuration. In online mode, a name only identifies a banned player once they
+     * authenticated with it, see {@link #onConnect(LoginEvent)}.
+     */
+    @Subscribe
+    public void onPreLogin(PreLoginEvent event) {
+        var cache = plugin.getPunishmentCache();
+        if (!plugin.getConfig().isPreLoginBanCheck() || plugin.getConfig().getForcedLanguage() == null || !cache.isLoaded()
+                || !event.getResult().isAllowed()) {
+            return;
         }
-        List<Punishment> punishments;
-        try {
-            punishments = plugin.getPunishmentManager().getPunishments(event.getPlayer().getUniqueId(), service, StandardPunishmentType.BAN,
-                    StandardPunishmentType.PERMANENT_BAN, StandardPunishmentType.MUTE, StandardPunishmentType.PERMANENT_MUTE).get(10, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            e.printStackTrace();
-            event.setResult(ResultedEvent.ComponentResult.denied(plugin.getMessageProvider().internalError(event.getPlayer(), true)));
+        Optional<UUID> uuid = proxyServer.getConfiguration().isOnlineMode() ? cache.getConfirmedPlayerUuid(event.getUsername()) :
+                Optional.of(Util.offlineUuid(event.getUsername()));
+        if (uuid.isEmpty()) {
             return;
         }
-        List<Ban> bans = new ArrayList<>();
-        List<Mute> mutes = new ArrayList<>();
-        for (Punishment punishment : punishments) {
-            if (punishment instanceof Ban velocityBan)
-                bans.add(velocityBan);
-            if (punishment instanceof Mute mute)
-                mutes.add(mute);
+        for (Ban ban : cache.getBans(uuid.get())) {
+            if (ban.isPermanent() && ban.isOngoing()) {
+                event.setResult(PreLoginEvent.PreLoginComponentResult.denied(ban.createFullReason(proxyServer.getConsoleCommandSource())));
+                return;
+            }
+        }
+    }
+
+    private CompletableFuture<Boolean> isWhitelisted(UUID uuid) {
+        if (!plugin.whitelistActive()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        var whitelistCache = plugin.getWhitelistCache();
+        if (whitelistCache.isLoaded()) {
+            return CompletableFuture.completedFuture(whitelistCache.isWhitelisted(uuid));
         }
-        Mute longestMute = Util.getLongestPunishment(mutes);
+        return Util.executeAsync(() -> plugin.getStorage().isWhitelisted(uuid), service);
+    }
+
+    private CompletableFuture<LoginVerdict> getLoginVerdict(UUID uuid) {
+        if (plugin.getPunishmentManager() instanceof DefaultPunishmentManager punishmentManager) {
+            return punishmentManager.getLoginVerdict(uuid, service).orTimeout(10, TimeUnit.SECONDS);
+        }
+        return isWhitelisted(uuid).thenCompose(whitelisted -> {
+            if (!whitelisted) {
+                return CompletableFuture.completedFuture(new LoginVerdict(false, null, null));
+            }
+            return plugin.getPunishmentManager().getPunishments(uuid, service, StandardPunishmentType.BAN, StandardPunishmentType.PERMANENT_BAN,
+                            StandardPunishmentType.MUTE, StandardPunishmentType.PERMANENT_MUTE)
+                    .orTimeout(10, TimeUnit.SECONDS)
+                    .thenApply(punishments -> LoginVerdict.of(true, punishments));
+        });
+    }
+
+    private void handleVerdict(LoginEvent event, LoginVerdict verdict) {
+        if (plugin.getConfig().isPreLoginBanCheck() && proxyServer.getConfiguration().isOnlineMode()) {
+            plugin.getPunishmentCache().confirmPlayerName(event.getPlayer().getUsername(), event.getPlayer().getUniqueId());
+        }
+        if (!verdict.whitelisted()) {
+            event.setResult(ResultedEvent.ComponentResult.denied(Component.text("WHITELIST").color(NamedTextColor.DARK_RED)));
+            return;
+        }
+        Mute longestMute = verdict.mute();
         if (longestMute != null) {
             longestMute.getDuration().absolute();
-            chatListener.getMutes().put(event.getPlayer().getUniqueId(), new ChatListener.MuteContainer(true).setMute(longestMute));
+            plugin.getExpiryScheduler().schedule(event.getPlayer().getUniqueId(), longestMute);
         }
-        if (bans.isEmpty())
-            return;
-        final Ban ban = Util.getLongestPunishment(bans);
+        chatListener.getMutes().put(event.getPlayer().getUniqueId(), new ChatListener.MuteContainer().setMute(longestMute));
+        final Ban ban = verdict.ban();
         if (ban == null)
             return;
         if (ban.isOngoing()) {
             Component deny = ban.createFullReason(event.getPlayer());
             event.setResult(ResultedEvent.ComponentResult.denied(deny));
         } else {
-            ban.cancel().whenCompleteAsync((unused, t) -> {
-                if (t != null) {
-                    t.printStackTrace();
-                    return;
-                }
-                proxyServer.getConsoleCommandSource().sendMessage(Component.text()
-                        .append(Component.text("Ban ").color(NamedTextColor.GREEN),
-                                Component.text("'" + ban.getPunishmentUuid().toString().toLowerCase() + "'")
-                                        .color(NamedTextColor.YELLOW),
-                                Component.text("was cancelled.").color(NamedTextColor.GREEN)));
-            }, service);
+            plugin.getExpiryScheduler().schedule(event.getPlayer().getUniqueId(), ban);
         }
     }
 }
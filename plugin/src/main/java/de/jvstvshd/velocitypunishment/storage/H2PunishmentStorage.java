@@ -0,0 +1,72 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import de.jvstvshd.velocitypunishment.internal.SchemaMigrator;
+import de.jvstvshd.velocitypunishment.internal.SqlDialect;
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Stores punishments in an embedded H2 database file in the data directory of the plugin, which avoids the network round trip
+ * to an external database on single proxy setups. The database runs in MySQL compatibility mode, so it shares all queries
+ * and the versioned schema migrations with the {@link MariaDbPunishmentStorage}.
+ */
+public class H2PunishmentStorage extends JdbcPunishmentStorage {
+
+    private final Logger logger;
+
+    /**
+     * @param file   the path of the database file, without the <code>.mv.db</code> extension
+     * @param logger the logger reporting the progress of schema migrations
+     */
+    public H2PunishmentStorage(Path file, Logger logger) {
+        super(createDataSource(file));
+        this.logger = logger;
+    }
+
+    private static HikariDataSource createDataSource(Path file) {
+        var config = new HikariConfig();
+        config.setDriverClassName(org.h2.Driver.class.getName());
+        config.setJdbcUrl("jdbc:h2:file:" + file.toAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+        config.setPoolName("velocity-punishment-h2");
+        config.setMaximumPoolSize(4);
+        config.setInitializationFailTimeout(-1);
+        return new HikariDataSource(config);
+    }
+
+    @Override
+    public void init() throws StorageException {
+        try {
+            new SchemaMigrator(dataSource, SqlDialect.H2, logger).migrate();
+        } catch (SQLException e) {
+            throw new StorageException("Could not migrate the schema of the embedded database", e);
+        }
+    }
+}
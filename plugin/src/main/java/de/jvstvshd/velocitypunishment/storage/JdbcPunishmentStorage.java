@@ -0,0 +1,348 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import com.zaxxer.hikari.HikariDataSource;
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import de.jvstvshd.velocitypunishment.internal.Util;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Base of all storages backed by a SQL database with the compact schema: binary uuids, type ids and expirations in
+ * milliseconds since the epoch. Subclasses create the data source and the schema.
+ */
+public abstract class JdbcPunishmentStorage implements PunishmentStorage {
+
+    private static final String COLUMNS = "punishment_id, uuid, name, type, expiration, reason";
+    private static final String INSERT_PUNISHMENT = "INSERT INTO velocity_punishment (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_PUNISHMENT = "DELETE FROM velocity_punishment WHERE punishment_id = ?";
+    private static final String UPDATE_PUNISHMENT = "UPDATE velocity_punishment SET reason = ?, expiration = ?, type = ? WHERE punishment_id = ?";
+    private static final String SELECT_PUNISHMENT_WITH_ID = "SELECT " + COLUMNS + " FROM velocity_punishment WHERE punishment_id = ?";
+    private static final String SELECT_PUNISHMENTS_OF_PLAYERS = "SELECT " + COLUMNS + " FROM velocity_punishment WHERE uuid IN %s AND type IN %s";
+    private static final int BULK_CHUNK_SIZE = 500;
+    private static final String SELECT_PUNISHMENT_PAGE = "SELECT " + COLUMNS + " FROM velocity_punishment WHERE uuid = ? AND type IN %s%s " +
+            "ORDER BY expiration, punishment_id LIMIT ?";
+    private static final String PAGE_AFTER_CURSOR = " AND (expiration > ? OR (expiration = ? AND punishment_id > ?))";
+    private static final String COUNT_PUNISHMENTS = "SELECT COUNT(*) FROM velocity_punishment WHERE uuid = ? AND type IN %s";
+    private static final String SELECT_ACTIVE = "SELECT 1 FROM velocity_punishment WHERE uuid = ? AND type IN %s AND expiration > ? LIMIT 1";
+    private static final String SELECT_LOGIN_DATA = "SELECT (SELECT COUNT(*) FROM velocity_punishment_whitelist WHERE uuid = ?), " +
+            "p.punishment_id, p.uuid, p.name, p.type, p.expiration, p.reason FROM (SELECT 1) AS login " +
+            "LEFT JOIN velocity_punishment p ON p.uuid = ? AND p.type IN %s";
+    private static final String SELECT_ACTIVE_IN_PARTITION = "SELECT " + COLUMNS + " FROM velocity_punishment " +
+            "WHERE uuid >= ? AND uuid <= ? AND type IN %s AND expiration > ?";
+    private static final String SELECT_PLAYER_NAMES = "SELECT DISTINCT name FROM velocity_punishment WHERE name LIKE ?";
+    private static final String SELECT_WHITELIST = "SELECT uuid FROM velocity_punishment_whitelist";
+    private static final String SELECT_WHITELISTED = "SELECT 1 FROM velocity_punishment_whitelist WHERE uuid = ?";
+    private static final String INSERT_WHITELISTED = "INSERT IGNORE INTO velocity_punishment_whitelist (uuid) VALUES (?)";
+    private static final String DELETE_WHITELISTED = "DELETE FROM velocity_punishment_whitelist WHERE uuid = ?";
+
+    protected final HikariDataSource dataSource;
+
+    protected JdbcPunishmentStorage(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public int parallelism() {
+        return Math.max(1, dataSource.getMaximumPoolSize() / 2);
+    }
+
+    @Override
+    public void write(List<StoredPunishment> inserts, List<UUID> deletes) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(INSERT_PUNISHMENT);
+             PreparedStatement delete = connection.prepareStatement(DELETE_PUNISHMENT)) {
+            final boolean batch = inserts.size() + deletes.size() > 1;
+            if (batch) {
+                connection.setAutoCommit(false);
+            }
+            try {
+                for (StoredPunishment punishment : inserts) {
+                    insert.setBytes(1, Util.uuidToBytes(punishment.punishmentId()));
+                    insert.setBytes(2, Util.uuidToBytes(punishment.player()));
+                    insert.setString(3, punishment.name());
+                    insert.setInt(4, punishment.type().getId());
+                    insert.setLong(5, punishment.expiration());
+                    insert.setString(6, punishment.reason());
+                    insert.addBatch();
+                }
+                for (UUID punishmentId : deletes) {
+                    delete.setBytes(1, Util.uuidToBytes(punishmentId));
+                    delete.addBatch();
+                }
+                if (!inserts.isEmpty()) {
+                    insert.executeBatch();
+                }
+                if (!deletes.isEmpty()) {
+                    delete.executeBatch();
+                }
+                if (batch) {
+                    connection.commit();
+                }
+            } catch (SQLException e) {
+                if (batch) {
+                    connection.rollback();
+                }
+                throw e;
+            } finally {
+                if (batch) {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void update(UUID punishmentId, StandardPunishmentType type, long expiration, String reason) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_PUNISHMENT)) {
+            statement.setString(1, reason);
+            statement.setLong(2, expiration);
+            statement.setInt(3, type.getId());
+            statement.setBytes(4, Util.uuidToBytes(punishmentId));
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public Optional<StoredPunishment> find(UUID punishmentId) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_PUNISHMENT_WITH_ID)) {
+            statement.setBytes(1, Util.uuidToBytes(punishmentId));
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? Optional.of(read(rs, 1)) : Optional.empty();
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public List<StoredPunishment> find(Collection<UUID> players, Set<StandardPunishmentType> types) throws StorageException {
+        final List<UUID> remaining = List.copyOf(players);
+        final List<StoredPunishment> punishments = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (int from = 0; from < remaining.size(); from += BULK_CHUNK_SIZE) {
+                List<UUID> chunk = remaining.subList(from, Math.min(from + BULK_CHUNK_SIZE, remaining.size()));
+                try (PreparedStatement statement = connection.prepareStatement(String.format(SELECT_PUNISHMENTS_OF_PLAYERS,
+                        placeholders(chunk.size()), placeholders(types.size())))) {
+                    int index = 1;
+                    for (UUID player : chunk) {
+                        statement.setBytes(index++, Util.uuidToBytes(player));
+                    }
+                    setTypes(statement, index, types);
+                    ResultSet rs = statement.executeQuery();
+                    while (rs.next()) {
+                        punishments.add(read(rs, 1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+        return punishments;
+    }
+
+    @Override
+    public List<StoredPunishment> findPage(UUID player, Set<StandardPunishmentType> types, long afterExpiration, @Nullable UUID afterId, int limit) throws StorageException {
+        final List<StoredPunishment> punishments = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(SELECT_PUNISHMENT_PAGE, placeholders(types.size()),
+                     afterId == null ? "" : PAGE_AFTER_CURSOR))) {
+            statement.setFetchSize(limit);
+            statement.setBytes(1, Util.uuidToBytes(player));
+            int index = setTypes(statement, 2, types);
+            if (afterId != null) {
+                statement.setLong(index++, afterExpiration);
+                statement.setLong(index++, afterExpiration);
+                statement.setBytes(index++, Util.uuidToBytes(afterId));
+            }
+            statement.setInt(index, limit);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                punishments.add(read(rs, 1));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+        return punishments;
+    }
+
+    @Override
+    public int count(UUID player, Set<StandardPunishmentType> types) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(COUNT_PUNISHMENTS, placeholders(types.size())))) {
+            statement.setBytes(1, Util.uuidToBytes(player));
+            setTypes(statement, 2, types);
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public boolean hasActive(UUID player, Set<StandardPunishmentType> types, long now) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(SELECT_ACTIVE, placeholders(types.size())))) {
+            statement.setBytes(1, Util.uuidToBytes(player));
+            statement.setLong(setTypes(statement, 2, types), now);
+            return statement.executeQuery().next();
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public List<StoredPunishment> findActive(Set<StandardPunishmentType> types, long now, int partition) throws StorageException {
+        final List<StoredPunishment> punishments = new ArrayList<>();
+        final byte[] lower = new byte[16];
+        final byte[] upper = new byte[16];
+        Arrays.fill(upper, (byte) 0xFF);
+        lower[0] = (byte) (partition << 4);
+        upper[0] = (byte) ((partition << 4) | 0x0F);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(SELECT_ACTIVE_IN_PARTITION, placeholders(types.size())))) {
+            statement.setFetchSize(1000);
+            statement.setBytes(1, lower);
+            statement.setBytes(2, upper);
+            statement.setLong(setTypes(statement, 3, types), now);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                punishments.add(read(rs, 1));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+        return punishments;
+    }
+
+    @Override
+    public LoginData findLoginData(UUID player, Set<StandardPunishmentType> types) throws StorageException {
+        boolean whitelisted = false;
+        final List<StoredPunishment> punishments = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(SELECT_LOGIN_DATA, placeholders(types.size())))) {
+            final byte[] uuid = Util.uuidToBytes(player);
+            statement.setBytes(1, uuid);
+            statement.setBytes(2, uuid);
+            setTypes(statement, 3, types);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                whitelisted |= rs.getInt(1) > 0;
+                if (rs.getBytes(2) != null) {
+                    punishments.add(read(rs, 2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+        return new LoginData(whitelisted, punishments);
+    }
+
+    @Override
+    public List<String> findPlayerNames(String prefix) throws StorageException {
+        final List<String> names = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER_NAMES)) {
+            statement.setString(1, prefix + "%");
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+        return names;
+    }
+
+    @Override
+    public Set<UUID> loadWhitelist() throws StorageException {
+        final Set<UUID> whitelisted = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_WHITELIST)) {
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                whitelisted.add(Util.uuidFromBytes(rs.getBytes(1)));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+        return whitelisted;
+    }
+
+    @Override
+    public boolean isWhitelisted(UUID player) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_WHITELISTED)) {
+            statement.setBytes(1, Util.uuidToBytes(player));
+            return statement.executeQuery().next();
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void setWhitelisted(UUID player, boolean whitelisted) throws StorageException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(whitelisted ? INSERT_WHITELISTED : DELETE_WHITELISTED)) {
+            statement.setBytes(1, Util.uuidToBytes(player));
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    private static StoredPunishment read(ResultSet rs, int offset) throws SQLException {
+        return new StoredPunishment(Util.uuidFromBytes(rs.getBytes(offset)), Util.uuidFromBytes(rs.getBytes(offset + 1)),
+                rs.getString(offset + 2), StandardPunishmentType.getById(rs.getInt(offset + 3)), rs.getLong(offset + 4),
+                rs.getString(offset + 5));
+    }
+
+    private static int setTypes(PreparedStatement statement, int index, Set<StandardPunishmentType> types) throws SQLException {
+        for (StandardPunishmentType type : types) {
+            statement.setInt(index++, type.getId());
+        }
+        return index;
+    }
+
+    private static String placeholders(int count) {
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+}
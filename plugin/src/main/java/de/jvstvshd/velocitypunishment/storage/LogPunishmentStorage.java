@@ -0,0 +1,884 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Stores punishments without an external database in an append-only log in the data directory of the plugin.
+ * <p>
+ * Every write appends its records followed by a commit record and forces them to disk before it returns. Each record is
+ * protected by a checksum and points to the previous record of the same player, so all punishments of a player form a chain
+ * through the log. Two memory-mapped {@link MappedUuidIndex indexes} map punishment ids to the offset of their latest
+ * record and players to the offset of their newest record, which makes lookups a hash probe followed by a few positional
+ * reads. The indexes are marked clean on shutdown; after a crash, they are rebuilt from the log and records following the
+ * last complete commit are discarded.
+ * <p>
+ * Changed and deleted punishments leave their old records behind; their size is counted on every write. {@link #maintain()}
+ * compacts the log once more than half of it is garbage: the live punishments are copied into a new file while reads and
+ * writes continue, and only the records written during the copy are appended while writes are blocked, before the new file
+ * replaces the log. The whitelist is small and rarely changed, so it is kept in a separate file which is replaced atomically
+ * on every change.
+ */
+public class LogPunishmentStorage implements PunishmentStorage {
+
+    private static final int MAGIC = 0x5650474C;
+    private static final int LOG_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte COMMIT = 3;
+    private static final Entry COMMIT_ENTRY = new Entry(COMMIT, 0, null, null, null);
+    private static final long DELETED = -1;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 14;
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    private static final int COMPACTION_BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final Path logFile;
+    private final Path whitelistFile;
+    private final Logger logger;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    private final Set<UUID> whitelist = ConcurrentHashMap.newKeySet();
+    private final ConcurrentSkipListMap<String, Integer> names = new ConcurrentSkipListMap<>();
+    private FileChannel log;
+    private long logLength;
+    private long garbageBytes;
+    private MappedUuidIndex ids;
+    private MappedUuidIndex players;
+
+    /**
+     * @param directory the directory the log, its indexes and the whitelist are stored in
+     * @param logger    the logger recovery and compaction are reported to
+     */
+    public LogPunishmentStorage(Path directory, Logger logger) {
+        this.directory = directory;
+        this.logFile = directory.resolve("punishments.log");
+        this.whitelistFile = directory.resolve("whitelist.dat");
+        this.logger = logger;
+    }
+
+    @Override
+    public void init() throws StorageException {
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(directory);
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (log.size() == 0) {
+                writeFully(log, ByteBuffer.allocate(LOG_HEADER_SIZE).putInt(MAGIC).putInt(1).flip(), 0);
+                log.force(true);
+            } else if (log.size() < LOG_HEADER_SIZE || read(0, LOG_HEADER_SIZE).getInt() != MAGIC) {
+                throw new StorageException(logFile + " is not a punishment log");
+            }
+            logLength = log.size();
+            ids = MappedUuidIndex.open(directory.resolve("punishment-ids.idx"), INITIAL_INDEX_CAPACITY);
+            players = MappedUuidIndex.open(directory.resolve("punishment-players.idx"), INITIAL_INDEX_CAPACITY);
+            if (!ids.isClean() || !players.isClean() || ids.logLength() != logLength || players.logLength() != logLength) {
+                final long start = System.currentTimeMillis();
+                recover();
+                if (logLength > LOG_HEADER_SIZE) {
+                    logger.info("Rebuilt punishment log index with " + ids.size() + " punishments in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            }
+            ids.markDirty();
+            players.markDirty();
+            loadLiveRecords();
+            if (Files.exists(whitelistFile)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(whitelistFile));
+                while (buffer.remaining() >= 16) {
+                    whitelist.add(new UUID(buffer.getLong(), buffer.getLong()));
+                }
+            }
+        } catch (IOException | StorageException e) {
+            closeQuietly();
+            if (e instanceof StorageException storageException) {
+                throw storageException;
+            }
+            throw new StorageException("Could not open punishment log in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeQuietly() {
+        for (AutoCloseable closeable : new AutoCloseable[]{ids, players, log}) {
+            try {
+                if (closeable != null) {
+                    closeable.close();
+                }
+            } catch (Exception e) {
+                logger.warn("Could not close punishment log file", e);
+            }
+        }
+        ids = null;
+        players = null;
+        log = null;
+        whitelist.clear();
+        names.clear();
+        garbageBytes = 0;
+    }
+
+    private void checkOpen() throws StorageException {
+        if (log == null) {
+            throw new StorageException("The punishment log in " + directory + " is not open");
+        }
+    }
+
+    @Override
+    public void write(List<StoredPunishment> inserts, List<UUID> deletes) throws StorageException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final Map<UUID, Long> heads = new HashMap<>();
+            final Map<UUID, Positioned> current = new HashMap<>();
+            final Map<String, Integer> nameChanges = new HashMap<>();
+            final List<Positioned> written = new ArrayList<>();
+            final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            long garbage = 0;
+            for (StoredPunishment punishment : inserts) {
+                final Positioned previous = current(current, punishment.punishmentId());
+                if (previous != null) {
+                    garbage += previous.size();
+                    countName(nameChanges, previous.entry().punishment().name(), -1);
+                }
+                final Positioned put = append(batch, logLength, new Entry(PUT, head(heads, punishment.player()), punishment.punishmentId(),
+                        punishment.player(), punishment));
+                heads.put(punishment.player(), put.offset());
+                current.put(punishment.punishmentId(), put);
+                written.add(put);
+                countName(nameChanges, punishment.name(), 1);
+            }
+            for (UUID punishmentId : deletes) {
+                final Positioned previous = current(current, punishmentId);
+                if (previous == null) {
+                    continue;
+                }
+                final UUID player = previous.entry().player();
+                final Positioned delete = append(batch, logLength, new Entry(DELETE, head(heads, player), punishmentId, player, null));
+                heads.put(player, delete.offset());
+                current.put(punishmentId, null);
+                written.add(delete);
+                garbage += previous.size() + delete.size();
+                countName(nameChanges, previous.entry().punishment().name(), -1);
+            }
+            if (written.isEmpty()) {
+                return;
+            }
+            garbage += append(batch, logLength, COMMIT_ENTRY).size();
+            final long start = logLength;
+            try {
+                writeFully(log, ByteBuffer.wrap(batch.toByteArray()), start);
+                log.force(false);
+            } catch (IOException e) {
+                try {
+                    log.truncate(start);
+                } catch (IOException truncateException) {
+                    e.addSuppressed(truncateException);
+                }
+                throw e;
+            }
+            logLength = start + batch.size();
+            garbageBytes += garbage;
+            for (Positioned entry : written) {
+                apply(ids, players, entry);
+            }
+            nameChanges.forEach(this::countName);
+        } catch (IOException e) {
+            throw new StorageException("Could not write to the punishment log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(UUID punishmentId, StandardPunishmentType type, long expiration, String reason) throws StorageException {
+        lock.writeLock().lock();
+        try {
+            Optional<StoredPunishment> current = find(punishmentId);
+            if (current.isPresent()) {
+                StoredPunishment old = current.get();
+                write(List.of(new StoredPunishment(punishmentId, old.player(), old.name(), type, expiration, reason)), List.of());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<StoredPunishment> find(UUID punishmentId) throws StorageException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            final long offset = ids.get(punishmentId);
+            return offset <= 0 ? Optional.empty() : Optional.of(read(offset).entry().punishment());
+        } catch (IOException e) {
+            throw new StorageException("Could not read from the punishment log", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<StoredPunishment> find(Collection<UUID> players, Set<StandardPunishmentType> types) throws StorageException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            final List<StoredPunishment> punishments = new ArrayList<>();
+            for (UUID player : players) {
+                forEachLive(player, punishment -> {
+                    if (types.contains(punishment.type())) {
+                        punishments.add(punishment);
+                    }
+                    return true;
+                });
+            }
+            return punishments;
+        } catch (IOException e) {
+            throw new StorageException("Could not read from the punishment log", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a page of the punishments of a player. The records of a player are chained in the order they were written, not
+     * by expiration, so the whole chain is read for every page; only the requested page is kept in memory.
+     */
+    @Override
+    public List<StoredPunishment> findPage(UUID player, Set<StandardPunishmentType> types, long afterExpiration, @Nullable UUID afterId, int limit) throws StorageException {
+        final Comparator<StoredPunishment> order = Comparator.comparingLong(StoredPunishment::expiration).thenComparing(StoredPunishment::punishmentId);
+        final PriorityQueue<StoredPunishment> page = new PriorityQueue<>(order.reversed());
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            forEachLive(player, punishment -> {
+                if (types.contains(punishment.type()) && (afterId == null || punishment.expiration() > afterExpiration
+                        || (punishment.expiration() == afterExpiration && punishment.punishmentId().compareTo(afterId) > 0))) {
+                    page.add(punishment);
+                    if (page.size() > limit) {
+                        page.poll();
+                    }
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            throw new StorageException("Could not read from the punishment log", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        final List<StoredPunishment> result = new ArrayList<>(page);
+        result.sort(order);
+        return result;
+    }
+
+    @Override
+    public int count(UUID player, Set<StandardPunishmentType> types) throws StorageException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            final int[] count = {0};
+            forEachLive(player, punishment -> {
+                if (types.contains(punishment.type())) {
+                    count[0]++;
+                }
+                return true;
+            });
+            return count[0];
+        } catch (IOException e) {
+            throw new StorageException("Could not read from the punishment log", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasActive(UUID player, Set<StandardPunishmentType> types, long now) throws StorageException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return !forEachLive(player, punishment -> !types.contains(punishment.type()) || punishment.expiration() <= now);
+        } catch (IOException e) {
+            throw new StorageException("Could not read from the punishment log", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<StoredPunishment> findActive(Set<StandardPunishmentType> types, long now, int partition) throws StorageException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            final List<UUID> partitionPlayers = new ArrayList<>();
+            players.forEach((player, offset) -> {
+                if ((int) (player.getMostSignificantBits() >>> 60) == partition) {
+                    partitionPlayers.add(player);
+                }
+            });
+            final List<StoredPunishment> punishments = new ArrayList<>();
+            for (UUID player : partitionPlayers) {
+                forEachLive(player, punishment -> {
+                    if (types.contains(punishment.type()) && punishment.expiration() > now) {
+                        punishments.add(punishment);
+                    }
+                    return true;
+                });
+            }
+            return punishments;
+        } catch (IOException e) {
+            throw new StorageException("Could not read from the punishment log", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> findPlayerNames(String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String name : names.tailMap(prefix).keySet()) {
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    @Override
+    public Set<UUID> loadWhitelist() {
+        return Set.copyOf(whitelist);
+    }
+
+    @Override
+    public boolean isWhitelisted(UUID player) {
+        return whitelist.contains(player);
+    }
+
+    @Override
+    public void setWhitelisted(UUID player, boolean whitelisted) throws StorageException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (whitelist) {
+            if (!(whitelisted ? whitelist.add(player) : whitelist.remove(player))) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(whitelist.size() * 16);
+            for (UUID uuid : whitelist) {
+                buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            }
+            Path temporary = directory.resolve("whitelist.dat.tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, buffer.flip(), 0);
+                channel.force(true);
+                Files.move(temporary, whitelistFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (whitelisted) {
+                    whitelist.remove(player);
+                } else {
+                    whitelist.add(player);
+                }
+                throw new StorageException("Could not write the whitelist", e);
+            }
+        }
+    }
+
+    /**
+     * Compacts the log if it is larger than 1 MiB and more than half of it is taken by changed or deleted punishments.
+     *
+     * @throws StorageException if the log could not be compacted
+     */
+    @Override
+    public void maintain() throws StorageException {
+        synchronized (compactionLock) {
+            lock.readLock().lock();
+            final boolean compact;
+            try {
+                compact = log != null && logLength >= MIN_COMPACTION_SIZE && garbageBytes * 2 > logLength;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (!compact) {
+                return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                throw new StorageException("Could not compact the punishment log", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (log == null || !log.isOpen()) {
+                return;
+            }
+            ids.markClean(logLength);
+            players.markClean(logLength);
+            ids.close();
+            players.close();
+            log.close();
+        } catch (IOException e) {
+            logger.error("Could not close punishment log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Called once the live punishments were copied during a compaction, before the records written in the meantime are
+     * appended. Does nothing by default; tests use it to write during a compaction.
+     *
+     * @throws StorageException if a write failed
+     */
+    void onCopied() throws StorageException {
+    }
+
+    /**
+     * @return the size of the log in bytes
+     */
+    long logLength() {
+        lock.readLock().lock();
+        try {
+            return logLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void compact() throws IOException {
+        final long start = System.currentTimeMillis();
+        final Path temporaryLog = directory.resolve("punishments.log.compact");
+        final Path temporaryIds = directory.resolve("punishment-ids.idx.compact");
+        final Path temporaryPlayers = directory.resolve("punishment-players.idx.compact");
+        final List<UUID> playerKeys = new ArrayList<>();
+        final long copiedUntil;
+        final int idCapacity;
+        final int playerCapacity;
+        lock.readLock().lock();
+        try {
+            copiedUntil = logLength;
+            idCapacity = ids.capacity();
+            playerCapacity = players.capacity();
+            players.forEach((player, offset) -> playerKeys.add(player));
+        } finally {
+            lock.readLock().unlock();
+        }
+        final long before;
+        final long after;
+        try (FileChannel out = FileChannel.open(temporaryLog, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             MappedUuidIndex newIds = MappedUuidIndex.open(temporaryIds, idCapacity);
+             MappedUuidIndex newPlayers = MappedUuidIndex.open(temporaryPlayers, playerCapacity)) {
+            newIds.reset(idCapacity);
+            newPlayers.reset(playerCapacity);
+            final Compaction compaction = new Compaction(out, newIds, newPlayers);
+            for (UUID player : playerKeys) {
+                final List<StoredPunishment> punishments = new ArrayList<>();
+                lock.readLock().lock();
+                try {
+                    forEachLive(player, punishments::add);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                Collections.reverse(punishments);
+                for (StoredPunishment punishment : punishments) {
+                    compaction.put(punishment);
+                }
+            }
+            try {
+                onCopied();
+            } catch (StorageException e) {
+                throw new IOException(e);
+            }
+            lock.writeLock().lock();
+            try {
+                if (!log.isOpen()) {
+                    throw new IOException("the punishment log was closed during the compaction");
+                }
+                before = logLength;
+                long position = copiedUntil;
+                while (position < logLength) {
+                    final Positioned record = read(position);
+                    if (record.entry().kind() == PUT) {
+                        compaction.put(record.entry().punishment());
+                    } else if (record.entry().kind() == DELETE) {
+                        compaction.delete(record.entry().id(), record.entry().player());
+                    }
+                    position += record.size();
+                }
+                compaction.finish();
+                log.close();
+                try {
+                    Files.move(temporaryLog, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                after = logLength = compaction.length();
+                garbageBytes = compaction.garbage();
+                try {
+                    ids.replaceWith(newIds);
+                    players.replaceWith(newPlayers);
+                } catch (IOException e) {
+                    logger.error("Could not replace the punishment log index after compaction, rebuilding it", e);
+                    recover();
+                    loadLiveRecords();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            for (Path file : List.of(temporaryLog, temporaryIds, temporaryPlayers)) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Could not delete " + file, e);
+                }
+            }
+        }
+        logger.info("Compacted punishment log from " + before + " to " + after + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void recover() throws IOException {
+        ids.reset(INITIAL_INDEX_CAPACITY);
+        players.reset(INITIAL_INDEX_CAPACITY);
+        final long size = log.size();
+        final List<Positioned> pending = new ArrayList<>();
+        long position = LOG_HEADER_SIZE;
+        long committed = LOG_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            ByteBuffer header = read(position, RECORD_HEADER_SIZE);
+            final int length = header.getInt();
+            final int checksum = header.getInt();
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer body = read(position + RECORD_HEADER_SIZE, length);
+            if (checksum(body.array()) != checksum) {
+                break;
+            }
+            final Entry entry;
+            try {
+                entry = decode(body);
+            } catch (RuntimeException e) {
+                break;
+            }
+            final Positioned record = new Positioned(position, RECORD_HEADER_SIZE + length, entry);
+            position += record.size();
+            if (entry.kind() == COMMIT) {
+                for (Positioned written : pending) {
+                    apply(ids, players, written);
+                }
+                pending.clear();
+                committed = position;
+            } else {
+                pending.add(record);
+            }
+        }
+        if (committed < size) {
+            logger.warn("Discarding " + (size - committed) + " bytes of incomplete writes at the end of the punishment log");
+            log.truncate(committed);
+            log.force(true);
+        }
+        logLength = committed;
+    }
+
+    /**
+     * Counts the names of all live punishments and the bytes taken by records of changed or deleted punishments.
+     */
+    private void loadLiveRecords() throws IOException {
+        final List<Long> offsets = new ArrayList<>();
+        ids.forEach((id, offset) -> {
+            if (offset > 0) {
+                offsets.add(offset);
+            }
+        });
+        names.clear();
+        long liveBytes = LOG_HEADER_SIZE;
+        for (long offset : offsets) {
+            final Positioned record = read(offset);
+            liveBytes += record.size();
+            countName(record.entry().punishment().name(), 1);
+        }
+        garbageBytes = logLength - liveBytes;
+    }
+
+    private void countName(Map<String, Integer> counts, @Nullable String name, int delta) {
+        if (name != null) {
+            counts.merge(name, delta, Integer::sum);
+        }
+    }
+
+    private void countName(String name, int delta) {
+        names.compute(name, (key, count) -> {
+            final int newCount = (count == null ? 0 : count) + delta;
+            return newCount > 0 ? newCount : null;
+        });
+    }
+
+    private static void apply(MappedUuidIndex ids, MappedUuidIndex players, Positioned record) throws IOException {
+        ids.put(record.entry().id(), record.entry().kind() == PUT ? record.offset() : DELETED);
+        players.put(record.entry().player(), record.offset());
+    }
+
+    private Positioned current(Map<UUID, Positioned> written, UUID punishmentId) throws IOException {
+        if (written.containsKey(punishmentId)) {
+            return written.get(punishmentId);
+        }
+        final long offset = ids.get(punishmentId);
+        return offset > 0 ? read(offset) : null;
+    }
+
+    private long head(Map<UUID, Long> heads, UUID player) {
+        Long head = heads.get(player);
+        return head != null ? head : players.get(player);
+    }
+
+    /**
+     * Follows the chain of records of a player from the newest to the oldest one. Only the newest record of each punishment
+     * counts, so changed punishments are visited once and deleted ones not at all.
+     *
+     * @param action called for every live punishment, returns whether to continue with the next one
+     * @return whether all live punishments were visited
+     */
+    private boolean forEachLive(UUID player, Predicate<StoredPunishment> action) throws IOException {
+        final Set<UUID> seen = new HashSet<>();
+        long offset = players.get(player);
+        while (offset != 0) {
+            final Entry entry = read(offset).entry();
+            if (seen.add(entry.id()) && entry.kind() == PUT && !action.test(entry.punishment())) {
+                return false;
+            }
+            offset = entry.previous();
+        }
+        return true;
+    }
+
+    private Positioned read(long offset) throws IOException {
+        final int length = read(offset, RECORD_HEADER_SIZE).getInt();
+        return new Positioned(offset, RECORD_HEADER_SIZE + length, decode(read(offset + RECORD_HEADER_SIZE, length)));
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        return read(log, position, length);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of punishment log at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Appends a record to a buffer whose content is written to the log at the given position.
+     */
+    private static Positioned append(ByteArrayOutputStream out, long base, Entry entry) throws IOException {
+        final long offset = base + out.size();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(entry.kind());
+        if (entry.kind() != COMMIT) {
+            body.writeLong(entry.previous());
+            body.writeLong(entry.id().getMostSignificantBits());
+            body.writeLong(entry.id().getLeastSignificantBits());
+            body.writeLong(entry.player().getMostSignificantBits());
+            body.writeLong(entry.player().getLeastSignificantBits());
+        }
+        if (entry.kind() == PUT) {
+            final StoredPunishment punishment = entry.punishment();
+            body.writeByte(punishment.type().getId());
+            body.writeLong(punishment.expiration());
+            writeString(body, punishment.name());
+            writeString(body, punishment.reason());
+        }
+        final byte[] content = bytes.toByteArray();
+        final DataOutputStream record = new DataOutputStream(out);
+        record.writeInt(content.length);
+        record.writeInt(checksum(content));
+        record.write(content);
+        return new Positioned(offset, RECORD_HEADER_SIZE + content.length, entry);
+    }
+
+    private static Entry decode(ByteBuffer body) {
+        final byte kind = body.get();
+        if (kind == COMMIT) {
+            return COMMIT_ENTRY;
+        }
+        final long previous = body.getLong();
+        final UUID id = new UUID(body.getLong(), body.getLong());
+        final UUID player = new UUID(body.getLong(), body.getLong());
+        if (kind == DELETE) {
+            return new Entry(DELETE, previous, id, player, null);
+        }
+        if (kind != PUT) {
+            throw new IllegalArgumentException("unknown record kind " + kind);
+        }
+        final StandardPunishmentType type = StandardPunishmentType.getById(body.get());
+        final long expiration = body.getLong();
+        final String name = readString(body);
+        final String reason = readString(body);
+        return new Entry(PUT, previous, id, player, new StoredPunishment(id, player, name, type, expiration, reason));
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    private record Entry(byte kind, long previous, UUID id, UUID player, StoredPunishment punishment) {
+    }
+
+    /**
+     * An entry together with its position and size in the log.
+     */
+    private record Positioned(long offset, int size, Entry entry) {
+    }
+
+    /**
+     * Writes the compacted log and its indexes. Every punishment is written once with a fresh chain per player; records
+     * written to the log during the copy are appended afterwards, which may leave some garbage behind.
+     */
+    private static final class Compaction {
+
+        private final FileChannel out;
+        private final MappedUuidIndex ids;
+        private final MappedUuidIndex players;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private long flushed = 0;
+        private long garbage = 0;
+
+        private Compaction(FileChannel out, MappedUuidIndex ids, MappedUuidIndex players) throws IOException {
+            this.out = out;
+            this.ids = ids;
+            this.players = players;
+            new DataOutputStream(buffer).writeInt(MAGIC);
+            new DataOutputStream(buffer).writeInt(1);
+        }
+
+        private void put(StoredPunishment punishment) throws IOException {
+            final long previous = ids.get(punishment.punishmentId());
+            if (previous > 0) {
+                flush();
+                garbage += RECORD_HEADER_SIZE + read(out, previous, RECORD_HEADER_SIZE).getInt();
+            }
+            apply(ids, players, append(buffer, flushed, new Entry(PUT, players.get(punishment.player()), punishment.punishmentId(),
+                    punishment.player(), punishment)));
+            if (buffer.size() >= COMPACTION_BUFFER_SIZE) {
+                flush();
+            }
+        }
+
+        private void delete(UUID punishmentId, UUID player) throws IOException {
+            final long previous = ids.get(punishmentId);
+            if (previous <= 0) {
+                return;
+            }
+            flush();
+            garbage += RECORD_HEADER_SIZE + read(out, previous, RECORD_HEADER_SIZE).getInt();
+            final Positioned delete = append(buffer, flushed, new Entry(DELETE, players.get(player), punishmentId, player, null));
+            garbage += delete.size();
+            apply(ids, players, delete);
+        }
+
+        private void finish() throws IOException {
+            garbage += append(buffer, flushed, COMMIT_ENTRY).size();
+            flush();
+            out.force(true);
+        }
+
+        private void flush() throws IOException {
+            writeFully(out, ByteBuffer.wrap(buffer.toByteArray()), flushed);
+            flushed += buffer.size();
+            buffer.reset();
+        }
+
+        private long length() {
+            return flushed;
+        }
+
+        private long garbage() {
+            return garbage;
+        }
+    }
+}
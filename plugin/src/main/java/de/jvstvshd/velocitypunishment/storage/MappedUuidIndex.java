@@ -0,0 +1,284 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A hash table from uuids to non-zero long values in a memory-mapped file, using open addressing with linear probing. Entries
+ * can be overwritten, but not removed; the table is grown in place once it is three quarters full. The header stores whether
+ * the table was closed cleanly and the length of the log it belongs to, so a table that may be out of date can be detected
+ * and rebuilt. The table is not thread-safe.
+ */
+public class MappedUuidIndex implements AutoCloseable {
+
+    private static final int MAGIC = 0x56505849;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_CAPACITY = 4;
+    private static final int OFFSET_SIZE = 8;
+    private static final int OFFSET_CLEAN = 12;
+    private static final int OFFSET_LOG_LENGTH = 16;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    private MappedUuidIndex(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the index stored in the given file. If the file does not exist or does not contain a valid index, an empty index
+     * which is not {@link #isClean() clean} is created.
+     *
+     * @param file            the file of the index
+     * @param initialCapacity the capacity of a newly created index, must be a power of two
+     * @return the opened index
+     * @throws IOException if the file could not be opened or mapped
+     */
+    public static MappedUuidIndex open(Path file, int initialCapacity) throws IOException {
+        MappedUuidIndex index = new MappedUuidIndex(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try {
+            if (!index.load()) {
+                index.reset(initialCapacity);
+            }
+        } catch (IOException e) {
+            index.channel.close();
+            throw e;
+        }
+        return index;
+    }
+
+    private boolean load() throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            return false;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        final int storedCapacity = header.getInt(OFFSET_CAPACITY);
+        if (header.getInt(OFFSET_MAGIC) != MAGIC || Integer.bitCount(storedCapacity) != 1
+                || fileSize != HEADER_SIZE + (long) storedCapacity * SLOT_SIZE) {
+            return false;
+        }
+        capacity = storedCapacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        size = buffer.getInt(OFFSET_SIZE);
+        return true;
+    }
+
+    /**
+     * Removes all entries and marks the index as not clean.
+     *
+     * @param minCapacity the minimum capacity of the emptied index, must be a power of two
+     * @throws IOException if the file could not be resized or mapped
+     */
+    public void reset(int minCapacity) throws IOException {
+        final int newCapacity = Math.max(minCapacity, capacity);
+        final long fileSize = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+        if (buffer == null || newCapacity != capacity) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        for (int position = 0; position < fileSize; position += 8) {
+            buffer.putLong(position, 0);
+        }
+        capacity = newCapacity;
+        size = 0;
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_SIZE, 0);
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, 0 if the key is not present
+     */
+    public long get(UUID key) {
+        int slot = slot(key);
+        while (true) {
+            final int position = position(slot);
+            final long value = buffer.getLong(position + 16);
+            if (value == 0) {
+                return 0;
+            }
+            if (buffer.getLong(position) == key.getMostSignificantBits() && buffer.getLong(position + 8) == key.getLeastSignificantBits()) {
+                return value;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   the key
+     * @param value the value, must not be 0
+     * @throws IOException if the index had to be grown and the file could not be resized
+     */
+    public void put(UUID key, long value) throws IOException {
+        if (value == 0) {
+            throw new IllegalArgumentException("value must not be 0");
+        }
+        if ((size + 1) * 4L > capacity * 3L) {
+            grow();
+        }
+        int slot = slot(key);
+        while (true) {
+            final int position = position(slot);
+            if (buffer.getLong(position + 16) == 0) {
+                buffer.putLong(position, key.getMostSignificantBits());
+                buffer.putLong(position + 8, key.getLeastSignificantBits());
+                buffer.putLong(position + 16, value);
+                buffer.putInt(OFFSET_SIZE, ++size);
+                return;
+            }
+            if (buffer.getLong(position) == key.getMostSignificantBits() && buffer.getLong(position + 8) == key.getLeastSignificantBits()) {
+                buffer.putLong(position + 16, value);
+                return;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Calls the given consumer for every entry of this index.
+     *
+     * @param consumer the consumer
+     */
+    public void forEach(ObjLongConsumer<UUID> consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            final int position = position(slot);
+            final long value = buffer.getLong(position + 16);
+            if (value != 0) {
+                consumer.accept(new UUID(buffer.getLong(position), buffer.getLong(position + 8)), value);
+            }
+        }
+    }
+
+    /**
+     * Replaces all entries of this index by the entries of another index by copying its table. The other index must not
+     * have a smaller capacity than this one.
+     *
+     * @param other the index to copy
+     * @throws IOException if the file could not be resized or mapped
+     */
+    public void replaceWith(MappedUuidIndex other) throws IOException {
+        if (other.capacity < capacity) {
+            throw new IllegalArgumentException("cannot copy an index with a smaller capacity");
+        }
+        final int length = HEADER_SIZE + other.capacity * SLOT_SIZE;
+        if (other.capacity != capacity) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            capacity = other.capacity;
+        }
+        buffer.put(0, other.buffer, 0, length);
+        buffer.putInt(OFFSET_CLEAN, 0);
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return whether the index was {@link #markClean(long) marked clean} when it was closed the last time
+     */
+    public boolean isClean() {
+        return buffer.getInt(OFFSET_CLEAN) == 1;
+    }
+
+    /**
+     * @return the log length stored when the index was marked clean
+     */
+    public long logLength() {
+        return buffer.getLong(OFFSET_LOG_LENGTH);
+    }
+
+    /**
+     * Marks the index as modified, so it is rebuilt if the process terminates before it was {@link #markClean(long) marked clean}.
+     */
+    public void markDirty() {
+        buffer.putInt(OFFSET_CLEAN, 0);
+        buffer.force();
+    }
+
+    /**
+     * Writes all entries to disk and marks the index as up to date with a log of the given length.
+     *
+     * @param logLength the length of the log
+     */
+    public void markClean(long logLength) {
+        buffer.force();
+        buffer.putLong(OFFSET_LOG_LENGTH, logLength);
+        buffer.putInt(OFFSET_CLEAN, 1);
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void grow() throws IOException {
+        if (HEADER_SIZE + capacity * 2L * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("index cannot hold more than " + size + " entries");
+        }
+        final long[] entries = new long[size * 3];
+        final int[] count = {0};
+        forEach((key, value) -> {
+            entries[count[0]++] = key.getMostSignificantBits();
+            entries[count[0]++] = key.getLeastSignificantBits();
+            entries[count[0]++] = value;
+        });
+        reset(capacity * 2);
+        for (int i = 0; i < count[0]; i += 3) {
+            put(new UUID(entries[i], entries[i + 1]), entries[i + 2]);
+        }
+    }
+
+    private int slot(UUID key) {
+        long hash = key.getMostSignificantBits() ^ key.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & (capacity - 1);
+    }
+
+    private int position(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
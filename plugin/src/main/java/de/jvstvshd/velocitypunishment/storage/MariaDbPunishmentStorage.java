@@ -0,0 +1,72 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import de.jvstvshd.velocitypunishment.config.DataBaseData;
+import de.jvstvshd.velocitypunishment.internal.SchemaMigrator;
+import de.jvstvshd.velocitypunishment.internal.SqlDialect;
+import org.slf4j.Logger;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Stores punishments in a MariaDB (or MySQL) database. The schema is brought up to date by the {@link SchemaMigrator}.
+ */
+public class MariaDbPunishmentStorage extends JdbcPunishmentStorage {
+
+    private final Logger logger;
+
+    public MariaDbPunishmentStorage(DataBaseData dbData, Logger logger) {
+        super(createDataSource(dbData));
+        this.logger = logger;
+    }
+
+    private static HikariDataSource createDataSource(DataBaseData dbData) {
+        var properties = new Properties();
+        properties.setProperty("dataSource.databaseName", dbData.getDatabase());
+        properties.setProperty("dataSource.serverName", dbData.getHost());
+        properties.setProperty("dataSource.portNumber", dbData.getPort());
+        properties.setProperty("dataSourceClassName", org.mariadb.jdbc.MariaDbDataSource.class.getName());
+        properties.setProperty("dataSource.user", dbData.getUsername());
+        properties.setProperty("dataSource.password", dbData.getPassword());
+        var config = new HikariConfig(properties);
+        config.setPoolName("velocity-punishment-hikari");
+        // connect lazily, so an unavailable database does not prevent the plugin from starting
+        config.setInitializationFailTimeout(-1);
+        return new HikariDataSource(config);
+    }
+
+    @Override
+    public void init() throws StorageException {
+        try {
+            new SchemaMigrator(dataSource, SqlDialect.MARIADB, logger).migrate();
+        } catch (SQLException e) {
+            throw new StorageException("Could not migrate the schema of database " + dataSource.getDataSourceProperties().get("databaseName"), e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persistence of punishments and the whitelist. All methods are blocking and are called from the executors of the plugin,
+ * implementations must be safe for concurrent use.
+ */
+public interface PunishmentStorage extends AutoCloseable {
+
+    /**
+     * The amount of partitions {@link #findActive(Set, long, int)} splits the punishments into.
+     */
+    int PARTITIONS = 16;
+
+    /**
+     * Prepares the storage for use, e.g. by creating or migrating its schema. Called once before any other method.
+     *
+     * @throws StorageException if the storage could not be prepared
+     */
+    void init() throws StorageException;
+
+    /**
+     * @return the amount of read operations this storage can efficiently run in parallel
+     */
+    default int parallelism() {
+        return 1;
+    }
+
+    /**
+     * Inserts and deletes punishments in one atomic operation. All inserts are applied before the deletes.
+     *
+     * @param inserts the punishments to insert
+     * @param deletes the ids of the punishments to delete
+     * @throws StorageException if the operation failed, in which case none of the changes were applied
+     */
+    void write(List<StoredPunishment> inserts, List<UUID> deletes) throws StorageException;
+
+    default void insert(StoredPunishment punishment) throws StorageException {
+        write(List.of(punishment), List.of());
+    }
+
+    default void delete(UUID punishmentId) throws StorageException {
+        write(List.of(), List.of(punishmentId));
+    }
+
+    /**
+     * Changes type, expiration and reason of a punishment.
+     *
+     * @throws StorageException if the operation failed
+     */
+    void update(UUID punishmentId, StandardPunishmentType type, long expiration, String reason) throws StorageException;
+
+    Optional<StoredPunishment> find(UUID punishmentId) throws StorageException;
+
+    /**
+     * @param players the uuids of the players
+     * @param types   the types to look for
+     * @return all punishments of the given types of all given players, in no particular order
+     * @throws StorageException if the operation failed
+     */
+    List<StoredPunishment> find(Collection<UUID> players, Set<StandardPunishmentType> types) throws StorageException;
+
+    /**
+     * Queries punishments of a player ordered by expiration and punishment id.
+     *
+     * @param player          the uuid of the player
+     * @param types           the types to look for
+     * @param afterExpiration the expiration of the last punishment of the previous page, ignored if {@code afterId} is null
+     * @param afterId         the id of the last punishment of the previous page, null for the first page
+     * @param limit           the maximum amount of punishments to return
+     * @return the punishments following the given position
+     * @throws StorageException if the operation failed
+     */
+    List<StoredPunishment> findPage(UUID player, Set<StandardPunishmentType> types, long afterExpiration, @Nullable UUID afterId, int limit) throws StorageException;
+
+    /**
+     * @param player the uuid of the player
+     * @param types  the types to look for
+     * @return the amount of punishments of the given types of this player
+     * @throws StorageException if the operation failed
+     */
+    int count(UUID player, Set<StandardPunishmentType> types) throws StorageException;
+
+    /**
+     * @return whether the player has a punishment of the given types that expires after {@code now}
+     * @throws StorageException if the operation failed
+     */
+    boolean hasActive(UUID player, Set<StandardPunishmentType> types, long now) throws StorageException;
+
+    /**
+     * Queries all punishments of the given types that expire after {@code now} for players whose uuid starts with the four bits
+     * given by {@code partition}.
+     *
+     * @param types     the types to look for
+     * @param now       the current time in milliseconds since the epoch
+     * @param partition the partition, between 0 and {@link #PARTITIONS} (exclusive)
+     * @return the active punishments in this partition
+     * @throws StorageException if the operation failed
+     */
+    List<StoredPunishment> findActive(Set<StandardPunishmentType> types, long now, int partition) throws StorageException;
+
+    /**
+     * Queries whitelist membership and punishments of a player at once, which some storages can answer in one round trip.
+     *
+     * @param player the uuid of the player
+     * @param types  the types to look for
+     * @return the login data of this player
+     * @throws StorageException if the operation failed
+     */
+    default LoginData findLoginData(UUID player, Set<StandardPunishmentType> types) throws StorageException {
+        return new LoginData(isWhitelisted(player), find(List.of(player), types));
+    }
+
+    /**
+     * @param prefix the lower case prefix
+     * @return the distinct names of punished players starting with the given prefix
+     * @throws StorageException if the operation failed
+     */
+    List<String> findPlayerNames(String prefix) throws StorageException;
+
+    Set<UUID> loadWhitelist() throws StorageException;
+
+    boolean isWhitelisted(UUID player) throws StorageException;
+
+    void setWhitelisted(UUID player, boolean whitelisted) throws StorageException;
+
+    /**
+     * Runs periodic housekeeping, such as compacting files. Called regularly from a background task.
+     *
+     * @throws StorageException if the maintenance failed
+     */
+    default void maintain() throws StorageException {
+    }
+
+    /**
+     * Releases all resources of this storage.
+     */
+    @Override
+    void close();
+
+    /**
+     * @param whitelisted whether the player is whitelisted
+     * @param punishments the punishments of the player
+     */
+    record LoginData(boolean whitelisted, List<StoredPunishment> punishments) {
+    }
+}
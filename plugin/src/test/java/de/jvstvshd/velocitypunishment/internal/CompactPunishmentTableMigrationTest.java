@@ -0,0 +1,179 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package de.jvstvshd.velocitypunishment.internal;
+
+import de.jvstvshd.velocitypunishment.api.punishment.PunishmentDuration;
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactPunishmentTableMigrationTest {
+
+    private static final Timestamp EXPIRATION = Timestamp.valueOf("2030-01-01 12:00:00");
+
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE velocity_punishment (uuid VARCHAR (36), name VARCHAR (16), type VARCHAR (1000), " +
+                    "expiration DATETIME (6), reason VARCHAR (1000), punishment_id VARCHAR (36))");
+            statement.execute("CREATE TABLE velocity_punishment_whitelist (uuid VARCHAR (36))");
+        }
+    }
+
+    @Test
+    void convertsLegacyRows() throws SQLException {
+        final UUID ban = UUID.randomUUID(), permanentBan = UUID.randomUUID(), mute = UUID.randomUUID();
+        final UUID player = UUID.randomUUID(), whitelisted = UUID.randomUUID();
+        insertLegacy(ban, player, "ban", EXPIRATION, "ban reason");
+        insertLegacy(permanentBan, player, "permanent_ban", null, "permanent reason");
+        insertLegacy(mute, UUID.randomUUID(), "mute", EXPIRATION, "mute reason");
+        insertLegacy(UUID.randomUUID(), player, "unknown", EXPIRATION, "unknown type");
+        insertLegacy(UUID.randomUUID(), player, null, EXPIRATION, "no type");
+        insertLegacy(UUID.randomUUID(), null, "ban", EXPIRATION, "no player");
+        insertLegacy(null, player, "ban", EXPIRATION, "no id");
+        execute("INSERT INTO velocity_punishment_whitelist (uuid) VALUES ('" + Util.trimUuid(whitelisted) + "')");
+
+        assertEquals(2, migrator().migrate());
+
+        final Map<UUID, Row> rows = readMigrated();
+        assertEquals(3, rows.size());
+        assertEquals(new Row(player, StandardPunishmentType.BAN.getId(), EXPIRATION.getTime(), "ban reason"), rows.get(ban));
+        assertEquals(new Row(player, StandardPunishmentType.PERMANENT_BAN.getId(), PunishmentDuration.MAX.getTime(), "permanent reason"), rows.get(permanentBan));
+        assertEquals(StandardPunishmentType.MUTE.getId(), rows.get(mute).type());
+        assertEquals(7, count("velocity_punishment_legacy"));
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM velocity_punishment_whitelist WHERE uuid = ?")) {
+            statement.setBytes(1, Util.uuidToBytes(whitelisted));
+            ResultSet rs = statement.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void appliesChangesMadeDuringMigration() throws SQLException {
+        final UUID deleted = UUID.randomUUID(), changed = UUID.randomUUID(), kept = UUID.randomUUID(), added = UUID.randomUUID();
+        final UUID player = UUID.randomUUID();
+        insertLegacy(deleted, player, "ban", EXPIRATION, "deleted");
+        insertLegacy(changed, player, "mute", EXPIRATION, "old reason");
+        insertLegacy(kept, player, "ban", EXPIRATION, "kept");
+        final CompactPunishmentTableMigration migration = new CompactPunishmentTableMigration() {
+            @Override
+            void onCopied(Connection connection) throws SQLException {
+                assertEquals(3, count("velocity_punishment_migration"));
+                execute("DELETE FROM velocity_punishment WHERE punishment_id = '" + Util.trimUuid(deleted) + "'");
+                execute("UPDATE velocity_punishment SET reason = 'new reason' WHERE punishment_id = '" + Util.trimUuid(changed) + "'");
+                insertLegacy(added, player, "kick", EXPIRATION, "added");
+            }
+        };
+
+        new SchemaMigrator(dataSource, SqlDialect.H2, LoggerFactory.getLogger(getClass()), List.of(migration, new CompactWhitelistMigration())).migrate();
+
+        final Map<UUID, Row> rows = readMigrated();
+        assertEquals(3, rows.size());
+        assertNull(rows.get(deleted));
+        assertEquals("new reason", rows.get(changed).reason());
+        assertEquals("kept", rows.get(kept).reason());
+        assertEquals(StandardPunishmentType.KICK.getId(), rows.get(added).type());
+    }
+
+    @Test
+    void createsSchemaOnce() throws SQLException {
+        execute("DROP TABLE velocity_punishment");
+        execute("DROP TABLE velocity_punishment_whitelist");
+
+        assertEquals(2, migrator().migrate());
+        assertEquals(2, migrator().migrate());
+
+        assertEquals(0, count("velocity_punishment"));
+        assertEquals(2, count("velocity_punishment_schema"));
+    }
+
+    private SchemaMigrator migrator() {
+        return new SchemaMigrator(dataSource, SqlDialect.H2, LoggerFactory.getLogger(getClass()));
+    }
+
+    private void insertLegacy(UUID punishmentId, UUID player, String type, Timestamp expiration, String reason) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO velocity_punishment " +
+                     "(uuid, name, type, expiration, reason, punishment_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, player == null ? null : Util.trimUuid(player));
+            statement.setString(2, "player");
+            statement.setString(3, type);
+            statement.setTimestamp(4, expiration);
+            statement.setString(5, reason);
+            statement.setString(6, punishmentId == null ? null : Util.trimUuid(punishmentId));
+            statement.executeUpdate();
+        }
+    }
+
+    private Map<UUID, Row> readMigrated() throws SQLException {
+        final Map<UUID, Row> rows = new HashMap<>();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT punishment_id, uuid, type, expiration, reason FROM velocity_punishment");
+            while (rs.next()) {
+                rows.put(Util.uuidFromBytes(rs.getBytes(1)), new Row(Util.uuidFromBytes(rs.getBytes(2)), rs.getInt(3), rs.getLong(4), rs.getString(5)));
+            }
+        }
+        return rows;
+    }
+
+    private int count(String table) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table);
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private record Row(UUID player, int type, long expiration, String reason) {
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import de.jvstvshd.velocitypunishment.api.punishment.StandardPunishmentType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogPunishmentStorageTest {
+
+    private static final Set<StandardPunishmentType> ALL_TYPES = EnumSet.allOf(StandardPunishmentType.class);
+
+    @TempDir
+    Path directory;
+
+    private LogPunishmentStorage storage;
+
+    @AfterEach
+    void tearDown() {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    @Test
+    void findsWrittenPunishments() throws StorageException {
+        storage = open();
+        final UUID player = UUID.randomUUID();
+        final StoredPunishment ban = punishment(player, "steve", StandardPunishmentType.BAN, 100);
+        final StoredPunishment mute = punishment(player, "steve", StandardPunishmentType.MUTE, 200);
+        storage.write(List.of(ban, mute), List.of());
+        storage.update(mute.punishmentId(), StandardPunishmentType.PERMANENT_MUTE, 300, "changed");
+
+        assertEquals(Optional.of(ban), storage.find(ban.punishmentId()));
+        assertEquals(List.of(ban), storage.find(List.of(player), EnumSet.of(StandardPunishmentType.BAN)));
+        assertEquals("changed", storage.find(mute.punishmentId()).orElseThrow().reason());
+        assertEquals(2, storage.find(List.of(player), ALL_TYPES).size());
+        assertTrue(storage.hasActive(player, EnumSet.of(StandardPunishmentType.BAN), 99));
+        assertFalse(storage.hasActive(player, EnumSet.of(StandardPunishmentType.BAN), 100));
+
+        storage.delete(ban.punishmentId());
+        assertEquals(Optional.empty(), storage.find(ban.punishmentId()));
+        assertEquals(1, storage.find(List.of(player), ALL_TYPES).size());
+    }
+
+    @Test
+    void pagesByExpiration() throws StorageException {
+        storage = open();
+        final UUID player = UUID.randomUUID();
+        final List<StoredPunishment> punishments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            punishments.add(punishment(player, "steve", StandardPunishmentType.BAN, 1000 - i * 10));
+        }
+        storage.write(punishments, List.of());
+        final List<StoredPunishment> sorted = punishments.stream().sorted(Comparator.comparingLong(StoredPunishment::expiration)).toList();
+
+        final List<StoredPunishment> first = storage.findPage(player, ALL_TYPES, 0, null, 4);
+        assertEquals(sorted.subList(0, 4), first);
+        final StoredPunishment last = first.get(3);
+        assertEquals(sorted.subList(4, 8), storage.findPage(player, ALL_TYPES, last.expiration(), last.punishmentId(), 4));
+        assertEquals(10, storage.count(player, ALL_TYPES));
+        assertEquals(0, storage.count(player, EnumSet.of(StandardPunishmentType.MUTE)));
+    }
+
+    @Test
+    void removesNamesOfDeletedPunishments() throws StorageException {
+        storage = open();
+        final StoredPunishment first = punishment(UUID.randomUUID(), "alex", StandardPunishmentType.BAN, 100);
+        final StoredPunishment second = punishment(first.player(), "alex", StandardPunishmentType.MUTE, 100);
+        final StoredPunishment other = punishment(UUID.randomUUID(), "alfred", StandardPunishmentType.BAN, 100);
+        storage.write(List.of(first, second, other), List.of());
+        assertEquals(List.of("alex", "alfred"), storage.findPlayerNames("al"));
+
+        storage.delete(first.punishmentId());
+        assertEquals(List.of("alex", "alfred"), storage.findPlayerNames("al"));
+        storage.delete(second.punishmentId());
+        assertEquals(List.of("alfred"), storage.findPlayerNames("al"));
+    }
+
+    @Test
+    void reopensCleanlyClosedLog() throws StorageException {
+        storage = open();
+        final StoredPunishment punishment = punishment(UUID.randomUUID(), "steve", StandardPunishmentType.BAN, 100);
+        storage.insert(punishment);
+        storage.close();
+
+        storage = open();
+        assertEquals(Optional.of(punishment), storage.find(punishment.punishmentId()));
+        assertEquals(List.of("steve"), storage.findPlayerNames("st"));
+    }
+
+    @Test
+    void discardsTornTail() throws StorageException, IOException {
+        storage = open();
+        final StoredPunishment punishment = punishment(UUID.randomUUID(), "steve", StandardPunishmentType.BAN, 100);
+        storage.insert(punishment);
+        final long length = storage.logLength();
+        storage.close();
+        Files.write(logFile(), new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        storage = open();
+        assertEquals(length, storage.logLength());
+        assertEquals(Optional.of(punishment), storage.find(punishment.punishmentId()));
+    }
+
+    @Test
+    void discardsUncommittedBatch() throws StorageException, IOException {
+        storage = open();
+        final StoredPunishment committed = punishment(UUID.randomUUID(), "steve", StandardPunishmentType.BAN, 100);
+        storage.insert(committed);
+        final long committedLength = storage.logLength();
+        final StoredPunishment uncommitted = punishment(UUID.randomUUID(), "alex", StandardPunishmentType.BAN, 100);
+        storage.write(List.of(uncommitted), List.of(committed.punishmentId()));
+        storage.close();
+        try (FileChannel channel = FileChannel.open(logFile(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 9);
+        }
+
+        storage = open();
+        assertEquals(committedLength, storage.logLength());
+        assertEquals(Optional.of(committed), storage.find(committed.punishmentId()));
+        assertEquals(Optional.empty(), storage.find(uncommitted.punishmentId()));
+        assertEquals(List.of(), storage.findPlayerNames("alex"));
+    }
+
+    @Test
+    void discardsCorruptRecords() throws StorageException, IOException {
+        storage = open();
+        final StoredPunishment first = punishment(UUID.randomUUID(), "steve", StandardPunishmentType.BAN, 100);
+        storage.insert(first);
+        final long firstLength = storage.logLength();
+        final StoredPunishment second = punishment(UUID.randomUUID(), "alex", StandardPunishmentType.BAN, 100);
+        storage.insert(second);
+        storage.close();
+        try (FileChannel channel = FileChannel.open(logFile(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, firstLength + 20);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0xFF)).rewind();
+            channel.write(buffer, firstLength + 20);
+        }
+        simulateCrash();
+
+        storage = open();
+        assertEquals(firstLength, storage.logLength());
+        assertEquals(Optional.of(first), storage.find(first.punishmentId()));
+        assertEquals(Optional.empty(), storage.find(second.punishmentId()));
+    }
+
+    @Test
+    void compactionKeepsLivePunishments() throws StorageException {
+        final Map<UUID, StoredPunishment> live = new HashMap<>();
+        final List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            players.add(UUID.randomUUID());
+        }
+        final StoredPunishment[] writtenDuringCopy = new StoredPunishment[1];
+        final UUID[] deletedDuringCopy = new UUID[1];
+        storage = new LogPunishmentStorage(directory, LoggerFactory.getLogger(getClass())) {
+            @Override
+            void onCopied() throws StorageException {
+                writtenDuringCopy[0] = punishment(players.get(0), "late", StandardPunishmentType.MUTE, 42);
+                insert(writtenDuringCopy[0]);
+                deletedDuringCopy[0] = live.keySet().iterator().next();
+                delete(deletedDuringCopy[0]);
+            }
+        };
+        storage.init();
+        final Random random = new Random(1);
+        final List<StoredPunishment> inserts = new ArrayList<>();
+        for (int i = 0; i < 12000; i++) {
+            final StoredPunishment punishment = punishment(players.get(random.nextInt(players.size())), "player" + (i % 20),
+                    StandardPunishmentType.BAN, i);
+            inserts.add(punishment);
+            live.put(punishment.punishmentId(), punishment);
+        }
+        for (int i = 0; i < inserts.size(); i += 500) {
+            storage.write(inserts.subList(i, i + 500), List.of());
+        }
+        final List<UUID> ids = new ArrayList<>(live.keySet());
+        final List<UUID> deletes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 2) {
+            deletes.add(ids.get(i));
+            live.remove(ids.get(i));
+        }
+        storage.write(List.of(), deletes);
+        final List<StoredPunishment> updates = new ArrayList<>();
+        for (int i = 1; i < ids.size(); i += 4) {
+            final StoredPunishment old = live.get(ids.get(i));
+            final StoredPunishment changed = new StoredPunishment(old.punishmentId(), old.player(), old.name(), StandardPunishmentType.PERMANENT_BAN,
+                    old.expiration() + 1, "changed");
+            updates.add(changed);
+            live.put(changed.punishmentId(), changed);
+        }
+        storage.write(updates, List.of());
+        final StoredPunishment updated = live.get(ids.get(3));
+        storage.update(updated.punishmentId(), StandardPunishmentType.BAN, 7, "updated");
+        live.put(updated.punishmentId(), new StoredPunishment(updated.punishmentId(), updated.player(), updated.name(), StandardPunishmentType.BAN, 7, "updated"));
+        final long before = storage.logLength();
+
+        storage.maintain();
+
+        assertTrue(storage.logLength() < before / 2, "log was not compacted");
+        assertNotNull(writtenDuringCopy[0], "compaction did not run");
+        live.put(writtenDuringCopy[0].punishmentId(), writtenDuringCopy[0]);
+        live.remove(deletedDuringCopy[0]);
+        assertLive(live, ids, players);
+        storage.close();
+
+        storage = open();
+        assertLive(live, ids, players);
+    }
+
+    private void assertLive(Map<UUID, StoredPunishment> live, List<UUID> ids, List<UUID> players) throws StorageException {
+        for (UUID id : ids) {
+            assertEquals(Optional.ofNullable(live.get(id)), storage.find(id));
+        }
+        final Set<StoredPunishment> found = new HashSet<>(storage.find(players, ALL_TYPES));
+        assertEquals(new HashSet<>(live.values()), found);
+    }
+
+    /**
+     * Marks the index as not closed cleanly, as if the proxy had been killed while the log was open.
+     */
+    private void simulateCrash() throws IOException {
+        try (MappedUuidIndex index = MappedUuidIndex.open(directory.resolve("punishment-ids.idx"), 16)) {
+            index.markDirty();
+        }
+    }
+
+    private LogPunishmentStorage open() throws StorageException {
+        final LogPunishmentStorage storage = new LogPunishmentStorage(directory, LoggerFactory.getLogger(getClass()));
+        storage.init();
+        return storage;
+    }
+
+    private Path logFile() {
+        return directory.resolve("punishments.log");
+    }
+
+    private static StoredPunishment punishment(UUID player, String name, StandardPunishmentType type, long expiration) {
+        return new StoredPunishment(UUID.randomUUID(), player, name, type, expiration, "reason");
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of Velocity Punishment, which is licensed under the MIT license.
+ *
+ * Copyright (c) 2022 JvstvsHD
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package de.jvstvshd.velocitypunishment.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedUuidIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void growsPastInitialCapacity() throws IOException {
+        final Map<UUID, Long> expected = new HashMap<>();
+        try (MappedUuidIndex index = MappedUuidIndex.open(directory.resolve("test.idx"), 16)) {
+            for (long i = 1; i <= 1000; i++) {
+                final UUID key = UUID.randomUUID();
+                index.put(key, i);
+                expected.put(key, i);
+            }
+            assertTrue(index.capacity() >= 1024, "index did not grow");
+            assertEquals(1000, index.size());
+            expected.forEach((key, value) -> assertEquals((long) value, index.get(key)));
+            assertEquals(0L, index.get(UUID.randomUUID()));
+        }
+    }
+
+    @Test
+    void overwritesValues() throws IOException {
+        try (MappedUuidIndex index = MappedUuidIndex.open(directory.resolve("test.idx"), 16)) {
+            final UUID key = UUID.randomUUID();
+            index.put(key, 1);
+            index.put(key, -1);
+            assertEquals(-1L, index.get(key));
+            assertEquals(1, index.size());
+        }
+    }
+
+    @Test
+    void reopensCleanlyClosedIndex() throws IOException {
+        final Path file = directory.resolve("test.idx");
+        final UUID key = UUID.randomUUID();
+        try (MappedUuidIndex index = MappedUuidIndex.open(file, 16)) {
+            assertFalse(index.isClean());
+            index.put(key, 42);
+            index.markClean(1234);
+        }
+        try (MappedUuidIndex index = MappedUuidIndex.open(file, 16)) {
+            assertTrue(index.isClean());
+            assertEquals(1234L, index.logLength());
+            assertEquals(42L, index.get(key));
+            index.markDirty();
+        }
+        try (MappedUuidIndex index = MappedUuidIndex.open(file, 16)) {
+            assertFalse(index.isClean());
+        }
+    }
+
+    @Test
+    void replacesInvalidFile() throws IOException {
+        final Path file = directory.resolve("test.idx");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33});
+        try (MappedUuidIndex index = MappedUuidIndex.open(file, 16)) {
+            assertFalse(index.isClean());
+            assertEquals(0, index.size());
+            assertEquals(0L, index.get(UUID.randomUUID()));
+        }
+    }
+}
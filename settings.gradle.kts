@@ -12,7 +12,8 @@ dependencyResolutionManagement {
 
             library("mariadb", "org.mariadb.jdbc", "mariadb-java-client").version("3.0.6")
             library("hikari", "com.zaxxer", "HikariCP").version("5.0.1")
-            bundle("database", listOf("mariadb", "hikari"))
+            library("h2", "com.h2database", "h2").version("2.1.214")
+            bundle("database", listOf("mariadb", "hikari", "h2"))
 
             val jUnitVersion = version("junit", "5.9.0")
             library("junit-jupiter-api", "org.junit.jupiter", "junit-jupiter-api").version(jUnitVersion)